@@ -5,6 +5,7 @@ import lombok.NonNull;
 import net.cogzmc.core.config.YAMLConfigurationFile;
 import net.cogzmc.core.effect.enderBar.EnderBarManager;
 import net.cogzmc.core.effect.npc.SoftNPCManager;
+import net.cogzmc.core.effect.particle.ParticleManager;
 import net.cogzmc.core.model.ModelManager;
 import net.cogzmc.core.modular.ModularPlugin;
 import net.cogzmc.core.netfiles.NetFileManager;
@@ -96,6 +97,7 @@ public class Core extends JavaPlugin {
             //Some extras
             this.enderBarManager = new EnderBarManager();
             new SoftNPCManager();
+            new ParticleManager();
             File geoIPDatabase = new File(getConfig().getString("geo-ip-database"));
             if (geoIPDatabase.exists()) {
                 try {
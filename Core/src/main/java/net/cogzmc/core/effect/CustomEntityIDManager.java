@@ -1,25 +1,37 @@
 package net.cogzmc.core.effect;
 
-import org.bukkit.Bukkit;
-import org.bukkit.World;
-import org.bukkit.entity.Entity;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Hands out entity ids for fake (packet only) entities.
+ *
+ * Ids come from a range starting at {@link #FIRST_ID}. Vanilla assigns entity ids from a counter starting at zero,
+ * which will never climb this high, so there's no need to check the loaded worlds for collisions. Ids that are released
+ * are handed out again before the counter moves on. This class is safe to use from any thread.
+ */
 public final class CustomEntityIDManager {
-    private static int CURRENT_INDICE = 2000;
+    private static final int FIRST_ID = 0x40000000;
+
+    private static final AtomicInteger nextId = new AtomicInteger(FIRST_ID);
+    private static final Queue<Integer> releasedIds = new ConcurrentLinkedQueue<>();
 
     public static int getNextId() {
-        do {
-            CURRENT_INDICE++;
-        } while (isDuplicateId(CURRENT_INDICE));
-        return CURRENT_INDICE;
+        Integer released = releasedIds.poll();
+        if (released != null) return released;
+        int id = nextId.getAndIncrement();
+        if (id < FIRST_ID) throw new IllegalStateException("Ran out of custom entity ids!");
+        return id;
     }
 
-    private static boolean isDuplicateId(Integer id) {
-        for (World world : Bukkit.getWorlds()) {
-            for (Entity entity : world.getEntities()) {
-                if (entity.getEntityId() == id) return true;
-            }
-        }
-        return false;
+    /**
+     * Allows an id from {@link #getNextId()} to be handed out again. Only call this once nothing will send packets using
+     * the id anymore.
+     * @param id The id to release.
+     */
+    public static void releaseId(int id) {
+        if (id < FIRST_ID) return;
+        releasedIds.offer(id);
     }
 }
@@ -0,0 +1,212 @@
+package net.cogzmc.core.effect.enderBar;
+
+import com.comphenix.packetwrapper.WrapperPlayServerEntityDestroy;
+import com.comphenix.packetwrapper.WrapperPlayServerEntityMetadata;
+import com.comphenix.packetwrapper.WrapperPlayServerEntityTeleport;
+import com.comphenix.packetwrapper.WrapperPlayServerSpawnEntityLiving;
+import com.comphenix.protocol.wrappers.WrappedDataWatcher;
+import com.google.common.collect.ImmutableSet;
+import lombok.Getter;
+import lombok.NonNull;
+import net.cogzmc.core.Core;
+import net.cogzmc.core.effect.CustomEntityIDManager;
+import net.cogzmc.core.player.CPlayer;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static net.cogzmc.core.effect.enderBar.EnderBarManager.HEIGHT;
+
+/**
+ * An ender bar that shows the same text and health to a group of subscribers.
+ *
+ * Unlike the per-player bars in the {@link net.cogzmc.core.effect.enderBar.EnderBarManager}, this is not backed by an
+ * NPC per player. There is one fake dragon id, and the metadata packet for it is built once per change and sent to
+ * every subscriber. Changes are deduplicated, and sent at most once every {@link #UPDATE_INTERVAL_TICKS} ticks.
+ *
+ * Create these using {@link net.cogzmc.core.effect.enderBar.EnderBarManager#createBroadcastBar(String)}.
+ */
+public final class BroadcastEnderBar {
+    static final long UPDATE_INTERVAL_TICKS = 5;
+    private static final float MAXIMUM_HEALTH = 200F;
+
+    private final EnderBarManager manager;
+    private final int id;
+    /* Subscribers, and the location their client last saw the dragon at */
+    private final Map<CPlayer, Location> subscribers = new HashMap<>();
+
+    @Getter private String text;
+    @Getter private Float healthPercentage = 1F;
+    @Getter private boolean destroyed = false;
+
+    private WrapperPlayServerEntityMetadata metadataPacket;
+    private boolean updatePending = false;
+    private long lastUpdateMillis = 0;
+
+    BroadcastEnderBar(EnderBarManager manager, @NonNull String text) {
+        this.manager = manager;
+        this.text = text;
+        this.id = CustomEntityIDManager.getNextId();
+        rebuildMetadata();
+    }
+
+    /**
+     * Sets the text shown to every subscriber. Setting the same text again does nothing.
+     * @param text The text to display on the bar.
+     */
+    public void setText(@NonNull String text) {
+        if (text.equals(this.text)) return;
+        this.text = text;
+        scheduleUpdate();
+    }
+
+    /**
+     * Sets how full the bar is for every subscriber. Setting the same value again does nothing.
+     * @param healthPercentage A value between 0 and 1.
+     */
+    public void setHealthPercentage(@NonNull Float healthPercentage) {
+        healthPercentage = Math.max(0F, Math.min(1F, healthPercentage));
+        if (healthPercentage.equals(this.healthPercentage)) return;
+        this.healthPercentage = healthPercentage;
+        scheduleUpdate();
+    }
+
+    /**
+     * Shows this bar to the player, if they are not already subscribed.
+     * @param player The {@link net.cogzmc.core.player.CPlayer} to show the bar to.
+     */
+    public void subscribe(CPlayer player) {
+        if (destroyed) throw new IllegalStateException("This bar has been destroyed!");
+        if (subscribers.containsKey(player)) return;
+        Player bukkitPlayer = player.getBukkitPlayer();
+        Location location = getBarLocation(bukkitPlayer.getLocation());
+        subscribers.put(player, location);
+        manager.onSubscribe(player, this);
+        getSpawnPacket(location).sendPacket(bukkitPlayer);
+    }
+
+    /**
+     * Hides this bar from the player, if they are subscribed.
+     * @param player The {@link net.cogzmc.core.player.CPlayer} to hide the bar from.
+     */
+    public void unsubscribe(CPlayer player) {
+        if (subscribers.remove(player) == null) return;
+        manager.onUnsubscribe(player, this);
+        Player bukkitPlayer = player.getBukkitPlayer();
+        if (bukkitPlayer != null && bukkitPlayer.isOnline()) getDespawnPacket().sendPacket(bukkitPlayer);
+    }
+
+    /**
+     * Hides the bar from every subscriber and frees its entity id. The bar cannot be used after this.
+     */
+    public void destroy() {
+        if (destroyed) return;
+        for (CPlayer player : getSubscribers()) unsubscribe(player);
+        destroyed = true;
+        manager.onDestroy(this);
+        CustomEntityIDManager.releaseId(id);
+    }
+
+    public ImmutableSet<CPlayer> getSubscribers() {
+        return ImmutableSet.copyOf(subscribers.keySet());
+    }
+
+    /* Called by the manager and listener */
+
+    void onSubscriberMove(CPlayer player, Location to) {
+        Location last = subscribers.get(player);
+        if (last == null) return;
+        Location current = getBarLocation(to);
+        if (!current.getWorld().equals(last.getWorld()) || current.distanceSquared(last) <= 9) return;
+        subscribers.put(player, current);
+        WrapperPlayServerEntityTeleport packet = new WrapperPlayServerEntityTeleport();
+        packet.setEntityID(id);
+        packet.setX(current.getX());
+        packet.setY(current.getY());
+        packet.setZ(current.getZ());
+        packet.sendPacket(player.getBukkitPlayer());
+    }
+
+    void respawnFor(CPlayer player, Location location) {
+        if (!subscribers.containsKey(player)) return;
+        Location barLocation = getBarLocation(location);
+        subscribers.put(player, barLocation);
+        getSpawnPacket(barLocation).sendPacket(player.getBukkitPlayer());
+    }
+
+    void removeSubscriber(CPlayer player) {
+        subscribers.remove(player);
+    }
+
+    /* Internals */
+
+    private void scheduleUpdate() {
+        if (destroyed || updatePending) return; //An update is already on its way, and will pick up this change
+        long ticksSinceUpdate = (System.currentTimeMillis() - lastUpdateMillis) / 50;
+        if (ticksSinceUpdate >= UPDATE_INTERVAL_TICKS) {
+            sendUpdate();
+            return;
+        }
+        updatePending = true;
+        Bukkit.getScheduler().runTaskLater(Core.getInstance(), new Runnable() {
+            @Override
+            public void run() {
+                updatePending = false;
+                if (!destroyed) sendUpdate();
+            }
+        }, UPDATE_INTERVAL_TICKS - ticksSinceUpdate);
+    }
+
+    private void sendUpdate() {
+        lastUpdateMillis = System.currentTimeMillis();
+        rebuildMetadata();
+        for (CPlayer player : subscribers.keySet()) {
+            metadataPacket.sendPacket(player.getBukkitPlayer());
+        }
+    }
+
+    private void rebuildMetadata() {
+        WrapperPlayServerEntityMetadata packet = new WrapperPlayServerEntityMetadata();
+        packet.setEntityId(id);
+        packet.setEntityMetadata(getDataWatcher().getWatchableObjects());
+        metadataPacket = packet;
+    }
+
+    private WrappedDataWatcher getDataWatcher() {
+        WrappedDataWatcher dataWatcher = new WrappedDataWatcher();
+        dataWatcher.setObject(0, (byte) 0x20); //Invisible
+        dataWatcher.setObject(6, healthPercentage * MAXIMUM_HEALTH); //Health
+        dataWatcher.setObject(10, text.substring(0, Math.min(text.length(), 64))); //Nametag value
+        dataWatcher.setObject(11, (byte) 1); //Always show nametag
+        return dataWatcher;
+    }
+
+    private WrapperPlayServerSpawnEntityLiving getSpawnPacket(Location location) {
+        WrapperPlayServerSpawnEntityLiving packet = new WrapperPlayServerSpawnEntityLiving();
+        packet.setEntityID(id);
+        packet.setType(EntityType.ENDER_DRAGON);
+        packet.setX(location.getX());
+        packet.setY(location.getY());
+        packet.setZ(location.getZ());
+        packet.setMetadata(getDataWatcher());
+        return packet;
+    }
+
+    private WrapperPlayServerEntityDestroy getDespawnPacket() {
+        WrapperPlayServerEntityDestroy packet = new WrapperPlayServerEntityDestroy();
+        packet.setEntities(new int[]{id});
+        return packet;
+    }
+
+    private static Location getBarLocation(Location playerLocation) {
+        Location location = playerLocation.clone();
+        location.setY(HEIGHT);
+        location.setPitch(0F);
+        location.setYaw(0F);
+        return location;
+    }
+}
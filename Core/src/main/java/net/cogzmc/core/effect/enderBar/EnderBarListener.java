@@ -6,6 +6,7 @@ import net.cogzmc.core.effect.npc.mobs.MobNPCEnderDragon;
 import net.cogzmc.core.player.CPlayer;
 import net.cogzmc.core.util.Point;
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
@@ -14,6 +15,8 @@ import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.event.player.PlayerRespawnEvent;
 import org.bukkit.event.player.PlayerTeleportEvent;
 
+import java.util.Set;
+
 import static net.cogzmc.core.effect.enderBar.EnderBarManager.HEIGHT;
 
 @Data
@@ -23,6 +26,10 @@ final class EnderBarListener implements Listener {
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onPlayerMove(PlayerMoveEvent event) {
         CPlayer onlinePlayer = Core.getOnlinePlayer(event.getPlayer());
+        Set<BroadcastEnderBar> broadcastBars = manager.broadcastSubscriptions.get(onlinePlayer);
+        if (broadcastBars != null) {
+            for (BroadcastEnderBar broadcastBar : broadcastBars) broadcastBar.onSubscriberMove(onlinePlayer, event.getTo());
+        }
         MobNPCEnderDragon enderBarFor = manager.enderBars.get(onlinePlayer);
         if (enderBarFor == null) return;
         Point current = Point.of(event.getTo());
@@ -41,5 +48,23 @@ final class EnderBarListener implements Listener {
         if (enderBarFor != null) {
             enderBarFor.despawn();
         }
+        respawnBroadcastBars(player, event.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(final PlayerRespawnEvent event) {
+        final CPlayer player = Core.getOnlinePlayer(event.getPlayer());
+        Bukkit.getScheduler().runTask(Core.getInstance(), new Runnable() {
+            @Override
+            public void run() {
+                if (player.isOnline()) respawnBroadcastBars(player, event.getRespawnLocation());
+            }
+        });
+    }
+
+    private void respawnBroadcastBars(CPlayer player, Location location) {
+        Set<BroadcastEnderBar> broadcastBars = manager.broadcastSubscriptions.get(player);
+        if (broadcastBars == null) return;
+        for (BroadcastEnderBar broadcastBar : broadcastBars) broadcastBar.respawnFor(player, location);
     }
 }
@@ -9,16 +9,20 @@ import net.cogzmc.core.util.Point;
 import org.bukkit.entity.Player;
 
 import java.net.InetAddress;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.*;
 
 /**
+ * Shows text on the boss health bar at the top of the screen, using fake ender dragons.
  *
+ * Bars that show the same thing to many players should use a {@link net.cogzmc.core.effect.enderBar.BroadcastEnderBar}
+ * from {@link #createBroadcastBar(String)}, which shares one set of packets between all of its subscribers. The per
+ * player methods spawn a dragon NPC for each player, and should only be used for text that is personalised.
  */
 @SuppressWarnings("UnusedDeclaration")
 public final class EnderBarManager implements CPlayerConnectionListener {
     final Map<CPlayer, MobNPCEnderDragon> enderBars = new HashMap<>();
+    final Map<CPlayer, Set<BroadcastEnderBar>> broadcastSubscriptions = new HashMap<>();
+    private final Set<BroadcastEnderBar> broadcastBars = new HashSet<>();
     final static Double HEIGHT = -300D;
 
     /**
@@ -29,6 +33,18 @@ public final class EnderBarManager implements CPlayerConnectionListener {
         Core.getInstance().registerListener(new EnderBarListener(this)); //Also need to move the ender dragon around.
     }
 
+    /**
+     * Creates a bar that can be shown to many players at once. Subscribe players to it using
+     * {@link net.cogzmc.core.effect.enderBar.BroadcastEnderBar#subscribe(net.cogzmc.core.player.CPlayer)}.
+     * @param text The text to initially show on the bar.
+     * @return The new bar, which has no subscribers.
+     */
+    public BroadcastEnderBar createBroadcastBar(String text) {
+        BroadcastEnderBar bar = new BroadcastEnderBar(this, text);
+        broadcastBars.add(bar);
+        return bar;
+    }
+
     /**
      * Creates an Ender Dragon for the player if it does not exist, then updates the text for the dragon.
      * @param player The {@link net.cogzmc.core.player.CPlayer} to set ender bar text for.
@@ -37,6 +53,7 @@ public final class EnderBarManager implements CPlayerConnectionListener {
     public void setTextFor(CPlayer player, String text) {
         createIfDoesNotExist(player);
         MobNPCEnderDragon mobNPCEnderDragon = enderBars.get(player);
+        if (text.equals(mobNPCEnderDragon.getCustomName()) && mobNPCEnderDragon.isSpawned()) return;
         mobNPCEnderDragon.setCustomName(text);
         mobNPCEnderDragon.update();
     }
@@ -49,7 +66,9 @@ public final class EnderBarManager implements CPlayerConnectionListener {
     public void setHealthPercentageFor(CPlayer player, Float health) {
         createIfDoesNotExist(player);
         MobNPCEnderDragon mobNPCEnderDragon = enderBars.get(player);
-        mobNPCEnderDragon.setHealth(health * 200F);
+        Float newHealth = health * 200F;
+        if (newHealth.equals(mobNPCEnderDragon.getHealth()) && mobNPCEnderDragon.isSpawned()) return;
+        mobNPCEnderDragon.setHealth(newHealth);
         mobNPCEnderDragon.update();
     }
 
@@ -86,12 +105,36 @@ public final class EnderBarManager implements CPlayerConnectionListener {
         return true;
     }
 
+    void onSubscribe(CPlayer player, BroadcastEnderBar bar) {
+        Set<BroadcastEnderBar> bars = broadcastSubscriptions.get(player);
+        if (bars == null) {
+            bars = new HashSet<>();
+            broadcastSubscriptions.put(player, bars);
+        }
+        bars.add(bar);
+    }
+
+    void onUnsubscribe(CPlayer player, BroadcastEnderBar bar) {
+        Set<BroadcastEnderBar> bars = broadcastSubscriptions.get(player);
+        if (bars == null) return;
+        bars.remove(bar);
+        if (bars.size() == 0) broadcastSubscriptions.remove(player);
+    }
+
+    void onDestroy(BroadcastEnderBar bar) {
+        broadcastBars.remove(bar);
+    }
+
     @Override
     public void onPlayerLogin(CPlayer player, InetAddress address) throws CPlayerJoinException {
     }
 
     @Override
     public void onPlayerDisconnect(CPlayer player) {
+        Set<BroadcastEnderBar> bars = this.broadcastSubscriptions.remove(player);
+        if (bars != null) {
+            for (BroadcastEnderBar bar : bars) bar.removeSubscriber(player);
+        }
         if (!this.enderBars.containsKey(player)) return;
         MobNPCEnderDragon mobNPCEnderDragon = this.enderBars.get(player);
         if (mobNPCEnderDragon.isSpawned()) mobNPCEnderDragon.despawn();
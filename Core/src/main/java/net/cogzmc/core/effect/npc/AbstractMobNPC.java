@@ -1,10 +1,6 @@
 package net.cogzmc.core.effect.npc;
 
 import com.comphenix.packetwrapper.*;
-import com.comphenix.protocol.PacketType;
-import com.comphenix.protocol.ProtocolLibrary;
-import com.comphenix.protocol.events.PacketAdapter;
-import com.comphenix.protocol.events.PacketEvent;
 import com.comphenix.protocol.wrappers.WrappedDataWatcher;
 import com.comphenix.protocol.wrappers.WrappedWatchableObject;
 import com.google.common.collect.ImmutableSet;
@@ -21,7 +17,6 @@ import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
 import org.bukkit.util.Vector;
 
-import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -32,16 +27,24 @@ import java.util.Set;
 @Setter(AccessLevel.NONE)
 @Log
 public abstract class AbstractMobNPC implements Observable<NPCObserver> {
+    private final static int METADATA_SLOTS = 32; //Metadata indices are five bits in the 1.7 protocol
+
     @Getter private Point location;
     @Getter private Integer headYaw;
     @Getter private final World world;
     private final Set<CPlayer> viewers;
     private final Set<NPCObserver> observers;
     protected final WrappedDataWatcher dataWatcher;
-    private WrappedDataWatcher lastDataWatcher;
+    /* Values of each metadata slot as clients last got them, and a bit per slot set by setMetadata since the last metadata packet */
+    private final Object[] lastSentValues = new Object[METADATA_SLOTS];
+    private int dirtyIndices;
+    /* The location clients were last told about, pending changes are sent on the next flush */
+    private Point sentLocation;
+    private Vector pendingVelocity;
+    private boolean headPending;
+    private boolean metadataPending;
     @Getter boolean spawned;
     @Getter protected final int id;
-    private InteractWatcher listener;
 
     @Getter @Setter private String customName;
     @Getter @Setter private boolean showingNametag = true;
@@ -54,13 +57,14 @@ public abstract class AbstractMobNPC implements Observable<NPCObserver> {
 
     protected abstract EntityType getEntityType();
     protected abstract Float getMaximumHealth();
+    /**
+     * Called on the flush following a call to {@link #update()}, once the metadata packet has been sent, rather than
+     * from within {@link #update()} itself. Packets sent from here reach clients straight after the rest of the flush.
+     * It's called once however many times {@link #update()} was called that tick.
+     */
     protected void onUpdate() {}
     protected void onDataWatcherUpdate() {}
 
-    {
-        SoftNPCManager.getInstance().mobRefs.add(new WeakReference<>(this));
-    }
-
     public AbstractMobNPC(@NonNull Point location, World world, Set<CPlayer> observers, @NonNull String title) {
         this.location = location.deepCopy();
         this.world = world;
@@ -71,11 +75,7 @@ public abstract class AbstractMobNPC implements Observable<NPCObserver> {
         this.spawned = false;
         this.customName = title;
         this.id = CustomEntityIDManager.getNextId();
-    }
-
-    private InteractWatcher createNewInteractWatcher() {
-        listener = new InteractWatcher(this);
-        return listener;
+        SoftNPCManager.getInstance().register(this, this.viewers);
     }
 
     @Override
@@ -95,18 +95,29 @@ public abstract class AbstractMobNPC implements Observable<NPCObserver> {
 
     public void addViewer(CPlayer player) {
         this.viewers.add(player);
+        SoftNPCManager.getInstance().addViewing(player, this);
         if (this.isSpawned()) forceSpawn(player.getBukkitPlayer());
     }
 
     public void removeViewer(CPlayer player) {
         this.viewers.remove(player);
+        SoftNPCManager.getInstance().removeViewing(player, this);
         if (this.isSpawned()) forceDespawn(player.getBukkitPlayer());
     }
 
     public void makeGlobal() {
+        for (CPlayer viewer : this.viewers) SoftNPCManager.getInstance().removeViewing(viewer, this);
         this.viewers.clear();
     }
 
+    boolean isViewer(CPlayer player) {
+        return this.viewers.contains(player);
+    }
+
+    boolean isVisibleTo(CPlayer player) {
+        return this.viewers.size() == 0 || this.viewers.contains(player);
+    }
+
     public Float getHealth() {
         return health == null ? getMaximumHealth() : Math.min(getMaximumHealth(), health);
     }
@@ -126,10 +137,18 @@ public abstract class AbstractMobNPC implements Observable<NPCObserver> {
 
     public void spawn() {
         if (spawned) throw new IllegalStateException("This NPC is already spawned!");
-        ProtocolLibrary.getProtocolManager().addPacketListener(createNewInteractWatcher());
+        sentLocation = location.deepCopy();
+        clearPending();
+        SoftNPCManager.getInstance().onMobSpawned(this);
         WrapperPlayServerSpawnEntityLiving packet = getSpawnPacket();
+        //Everyone targeted gets the full metadata in the spawn packet
+        for (WrappedWatchableObject watchableObject : dataWatcher.getWatchableObjects()) lastSentValues[watchableObject.getIndex()] = watchableObject.getValue();
+        dirtyIndices = 0;
         for (Player player : getTargets()) {
+            //Players out of view get it once it comes into view, or they do
+            if (player == null || !SoftNPCManager.getInstance().isInView(player, this)) continue;
             packet.sendPacket(player);
+            SoftNPCManager.getInstance().markKnown(player, this);
         }
         spawned = true;
         if (Core.DEBUG) log.info("Spawning " + getClass().getSimpleName() + " with ID #" + id);
@@ -146,23 +165,29 @@ public abstract class AbstractMobNPC implements Observable<NPCObserver> {
         WrapperPlayServerEntityDestroy packet = getDespawnPacket();
         for (Player player : getTargets()) {
             packet.sendPacket(player);
+            SoftNPCManager.getInstance().markUnknown(player, this);
         }
-        ProtocolLibrary.getProtocolManager().removePacketListener(listener);
-        listener = null;
+        SoftNPCManager.getInstance().onMobDespawned(this);
         spawned = false;
+        sentLocation = null;
+        clearPending();
         if (Core.DEBUG) log.info("Despawned #" + id + " " + getClass().getSimpleName());
     }
 
     public void forceDespawn(Player bukkitPlayer) {
         getDespawnPacket().sendPacket(bukkitPlayer);
+        SoftNPCManager.getInstance().markUnknown(bukkitPlayer, this);
     }
 
     public void forceSpawn(Player player) {
         getSpawnPacket().sendPacket(player);
+        SoftNPCManager.getInstance().markKnown(player, this);
     }
 
     protected WrapperPlayServerSpawnEntityLiving getSpawnPacket() {
         WrapperPlayServerSpawnEntityLiving packet = new WrapperPlayServerSpawnEntityLiving();
+        //Clients spawned between a move and the next flush get the last sent location, so the pending relative move lines up
+        Point location = sentLocation == null ? this.location : sentLocation;
         packet.setEntityID(id);
         packet.setX(location.getX());
         packet.setY(location.getY());
@@ -213,38 +238,93 @@ public abstract class AbstractMobNPC implements Observable<NPCObserver> {
         playStatus(players, 3);
     }
 
+    /**
+     * Queues a metadata update for this NPC. The changed values are sent on the next flush, together with any
+     * movement queued during the same tick, and {@link #onUpdate()} is called after them.
+     */
     public void update() {
         if (!spawned) spawn();
-        updateDataWatcher(); //Send a call to update the datawatcher
-        WrapperPlayServerEntityMetadata packet = new WrapperPlayServerEntityMetadata();
-        List<WrappedWatchableObject> watchableObjects = new ArrayList<>();
-        //Let's check through the last datawatcher values sent (that we store later in this method) and sent changed values.
-        if (lastDataWatcher == null) watchableObjects.addAll(dataWatcher.getWatchableObjects());
-        else {
-            for (WrappedWatchableObject watchableObject : dataWatcher.getWatchableObjects()) {
-                Object object = lastDataWatcher.getObject(watchableObject.getIndex());
-                if (object == null || !object.equals(watchableObject.getValue())) watchableObjects.add(watchableObject);
-            }
-        }
-        if (Core.DEBUG) {
-            for (WrappedWatchableObject watchableObject : watchableObjects) {
-                log.info("Sending update on " + watchableObject.getIndex() + " for #" + id + " (" + getClass().getSimpleName() + " ) =" + watchableObject.getValue() + " (" + watchableObject.getType().getName() + ")");
-            }
-        }
-        packet.setEntityMetadata(watchableObjects);
-        packet.setEntityId(id);
-        for (Player player : getTargets()) {
-            packet.sendPacket(player); //Broadcast the packet
-        }
-        lastDataWatcher = dataWatcher.deepClone(); //So things are only sent when we need to, track changes.
-        onUpdate();
+        metadataPending = true;
+        SoftNPCManager.getInstance().queueFlush(this);
     }
 
+    /**
+     * Queues a move to the passed point. Several moves in the same tick are coalesced into a single relative move or
+     * teleport on the next flush.
+     */
     public void move(Point point) {
         if (!spawned) throw new IllegalStateException("You cannot teleport something that has yet to spawn!");
-        final Point location1 = this.location;
         this.location = point;
-        AbstractPacket packet;
+        SoftNPCManager.getInstance().onMobMoved(this);
+        SoftNPCManager.getInstance().queueFlush(this);
+    }
+
+    public void addVelocity(Vector vector) {
+        pendingVelocity = vector.clone();
+        SoftNPCManager.getInstance().queueFlush(this);
+    }
+
+    public void moveHead(byte parts) {
+        if (!spawned) throw new IllegalStateException("You cannot modify the rotation of the head of a non-spawned entity!");
+        headYaw = headYaw + parts;
+        headPending = true;
+        SoftNPCManager.getInstance().queueFlush(this);
+    }
+
+    /**
+     * Builds one packet for each kind of pending change and sends them to every target back to back.
+     *
+     * Called once per tick by the {@link net.cogzmc.core.effect.npc.SoftNPCManager} for NPCs that queued changes.
+     */
+    void flush() {
+        if (!spawned) {
+            clearPending();
+            return;
+        }
+        List<AbstractPacket> packets = new ArrayList<>(4);
+        AbstractPacket movePacket = getMovePacket();
+        if (movePacket != null) packets.add(movePacket);
+        if (headPending) {
+            WrapperPlayServerEntityHeadRotation packet = new WrapperPlayServerEntityHeadRotation();
+            packet.setEntityId(id);
+            packet.setHeadYaw(headYaw);
+            packets.add(packet);
+        }
+        if (pendingVelocity != null) {
+            WrapperPlayServerEntityVelocity packet = new WrapperPlayServerEntityVelocity();
+            packet.setEntityId(id);
+            packet.setVelocityX(pendingVelocity.getX());
+            packet.setVelocityY(pendingVelocity.getY());
+            packet.setVelocityZ(pendingVelocity.getZ());
+            packets.add(packet);
+        }
+        boolean updated = metadataPending;
+        if (metadataPending) {
+            WrapperPlayServerEntityMetadata packet = getMetadataPacket();
+            if (packet != null) packets.add(packet);
+        }
+        clearPending();
+        if (packets.size() > 0) {
+            for (Player player : getTargets()) {
+                //Clients that don't have this NPC spawned get its current state when it's spawned for them
+                if (player == null || !SoftNPCManager.getInstance().isKnownBy(player, this)) continue;
+                for (AbstractPacket packet : packets) packet.sendPacket(player);
+            }
+        }
+        if (updated) onUpdate(); //After the packets above, as update() used to call it once the metadata was sent
+    }
+
+    private void clearPending() {
+        headPending = false;
+        metadataPending = false;
+        pendingVelocity = null;
+    }
+
+    private AbstractPacket getMovePacket() {
+        final Point location1 = this.sentLocation;
+        final Point point = this.location;
+        if (location1 == null || location1.equals(point)) return null;
+        this.sentLocation = point.deepCopy();
         if (Core.DEBUG) log.info("Moving from " + location1.toString() + " to " + point.toString() + "; distance=" + location1.distance(point));
         if (location1.distanceSquared(point) <= 16) { //if we're moving less than four blocks
             if (Core.DEBUG) log.info("Teleporting #" + id + " using relative move. " + getClass().getSimpleName());
@@ -255,53 +335,49 @@ public abstract class AbstractMobNPC implements Observable<NPCObserver> {
             packet1.setDz(point.getZ() - location1.getZ());
             packet1.setPitch(point.getPitch()); //Pitch of the head
             packet1.setYaw(point.getYaw()); //yaw of the body
-            packet = packet1;
-        }
-        else {
-            if (Core.DEBUG) log.info("Teleporting #" + id + " using teleport move. " + getClass().getSimpleName());
-            WrapperPlayServerEntityTeleport packet1 = new WrapperPlayServerEntityTeleport();
-            packet1.setEntityID(id);
-            packet1.setX(point.getX());
-            packet1.setY(point.getY());
-            packet1.setZ(point.getZ());
-            packet1.setPitch(point.getPitch());
-            packet1.setYaw(point.getYaw());
-            packet = packet1;
-        }
-        for (Player player : getTargets()) {
-            packet.sendPacket(player);
+            return packet1;
         }
+        if (Core.DEBUG) log.info("Teleporting #" + id + " using teleport move. " + getClass().getSimpleName());
+        WrapperPlayServerEntityTeleport packet1 = new WrapperPlayServerEntityTeleport();
+        packet1.setEntityID(id);
+        packet1.setX(point.getX());
+        packet1.setY(point.getY());
+        packet1.setZ(point.getZ());
+        packet1.setPitch(point.getPitch());
+        packet1.setYaw(point.getYaw());
+        return packet1;
     }
 
-    public void addVelocity(Vector vector) {
-        WrapperPlayServerEntityVelocity packet = new WrapperPlayServerEntityVelocity();
-        packet.setEntityId(id);
-        packet.setVelocityX(vector.getX());
-        packet.setVelocityY(vector.getY());
-        packet.setVelocityZ(vector.getZ());
-        for (Player player : getTargets()) {
-            packet.sendPacket(player);
+    private WrapperPlayServerEntityMetadata getMetadataPacket() {
+        updateDataWatcher(); //Send a call to update the datawatcher
+        if (dirtyIndices == 0) return null; //Nothing was set since the last time we sent metadata
+        List<WrappedWatchableObject> watchableObjects = new ArrayList<>(Integer.bitCount(dirtyIndices));
+        //Only the slots that were set are visited, and only the ones that differ from what clients have are sent
+        for (int bits = dirtyIndices; bits != 0; bits &= bits - 1) {
+            int index = Integer.numberOfTrailingZeros(bits);
+            WrappedWatchableObject watchableObject = dataWatcher.getWatchableObject(index);
+            if (watchableObject == null) continue;
+            Object value = watchableObject.getValue();
+            if (value.equals(lastSentValues[index])) continue; //Set more than once, and ended up back where it was
+            lastSentValues[index] = value;
+            if (Core.DEBUG) log.info("Sending update on " + index + " for #" + id + " (" + getClass().getSimpleName() + " ) =" + watchableObject.getValue() + " (" + watchableObject.getType().getName() + ")");
+            watchableObjects.add(watchableObject);
         }
-    }
-
-    public void moveHead(byte parts) {
-        if (!spawned) throw new IllegalStateException("You cannot modify the rotation of the head of a non-spawned entity!");
-        headYaw = headYaw + parts;
-        WrapperPlayServerEntityHeadRotation packet = new WrapperPlayServerEntityHeadRotation();
+        dirtyIndices = 0;
+        if (watchableObjects.size() == 0) return null;
+        WrapperPlayServerEntityMetadata packet = new WrapperPlayServerEntityMetadata();
+        packet.setEntityMetadata(watchableObjects);
         packet.setEntityId(id);
-        packet.setHeadYaw(headYaw);
-        for (Player player : getTargets()) {
-            packet.sendPacket(player);
-        }
+        return packet;
     }
 
     protected void updateDataWatcher() {
         if (Core.DEBUG) log.info("Update for datawatcher called on " + getClass().getSimpleName() + " #" + id + "!");
-        dataWatcher.setObject(6, getHealth()); //Health
-        if (showingNametag) dataWatcher.setObject(11, (byte)1); //Always show nametag
-        else if (dataWatcher.getObject(11) != null) dataWatcher.removeObject(11);
-        if (customName != null) dataWatcher.setObject(10, customName.substring(0, Math.min(customName.length(), 64))); //Nametag value
-        else if (dataWatcher.getObject(10) != null) dataWatcher.removeObject(10);
+        setMetadata(6, getHealth()); //Health
+        if (showingNametag) setMetadata(11, (byte)1); //Always show nametag
+        else removeMetadata(11);
+        if (customName != null) setMetadata(10, customName.substring(0, Math.min(customName.length(), 64))); //Nametag value
+        else removeMetadata(10);
         //Others
         byte zeroByte = 0;
         if (onFire) zeroByte |= 0x01;
@@ -309,32 +385,34 @@ public abstract class AbstractMobNPC implements Observable<NPCObserver> {
         if (sprinting) zeroByte |= 0x08;
         if (blocking) zeroByte |= 0x10;
         if (invisible) zeroByte |= 0x20;
-        dataWatcher.setObject(0, zeroByte);
+        setMetadata(0, zeroByte);
         onDataWatcherUpdate();
     }
 
-    public ImmutableSet<CPlayer> getViewers() {
-        return ImmutableSet.copyOf(viewers);
+    /**
+     * Sets a value in the {@link #dataWatcher}, and marks its slot to be checked against what clients last got on the
+     * next metadata update. Subclasses should set metadata through this rather than on the data watcher directly.
+     * @param index The metadata slot.
+     * @param value The value, or {@code null} to remove it.
+     */
+    protected void setMetadata(int index, Object value) {
+        if (value == null) {
+            removeMetadata(index);
+            return;
+        }
+        if (value.equals(dataWatcher.getObject(index))) return;
+        dataWatcher.setObject(index, value);
+        dirtyIndices |= (1 << index);
     }
 
-    private static class InteractWatcher extends PacketAdapter {
-        private final AbstractMobNPC watchingFor;
-
-        public InteractWatcher(AbstractMobNPC watchingFor) {
-            super(Core.getInstance(), PacketType.Play.Client.USE_ENTITY);
-            this.watchingFor = watchingFor;
-        }
+    /**
+     * Removes a value from the {@link #dataWatcher}. Removed values can't be unset on the client, so nothing is sent.
+     */
+    protected void removeMetadata(int index) {
+        if (dataWatcher.getObject(index) != null) dataWatcher.removeObject(index);
+    }
 
-        @Override
-        public void onPacketReceiving(PacketEvent event) {
-            WrapperPlayClientUseEntity packet = new WrapperPlayClientUseEntity(event.getPacket());
-            if (packet.getTargetID() != watchingFor.getId()) return;
-            CPlayer onlinePlayer = Core.getOnlinePlayer(event.getPlayer());
-            ClickAction clickAction = ClickAction.valueOf(packet.getMouse());
-            for (NPCObserver npcObserver : watchingFor.getObservers()) {
-                try {npcObserver.onPlayerInteract(onlinePlayer, watchingFor, clickAction);} catch (Exception e) {e.printStackTrace();}
-            }
-            event.setCancelled(true);
-        }
+    public ImmutableSet<CPlayer> getViewers() {
+        return ImmutableSet.copyOf(viewers);
     }
 }
@@ -26,8 +26,8 @@ public abstract class AbstractTameableMobNPC extends AbstractAgeableMobNPC {
         byte value = 0;
         if (sitting) value |= 0x01;
         if (tame) value |= 0x04;
-        dataWatcher.setObject(16, value);
-        if (ownerName != null) dataWatcher.setObject(17, ownerName);
+        setMetadata(16, value);
+        if (ownerName != null) setMetadata(17, ownerName);
     }
 
     public void playHeartParticles() {
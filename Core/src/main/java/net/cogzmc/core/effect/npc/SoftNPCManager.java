@@ -1,110 +1,240 @@
 package net.cogzmc.core.effect.npc;
 
+import com.comphenix.packetwrapper.WrapperPlayClientUseEntity;
 import com.comphenix.packetwrapper.WrapperPlayServerEntityDestroy;
+import com.comphenix.protocol.PacketType;
+import com.comphenix.protocol.ProtocolLibrary;
+import com.comphenix.protocol.events.PacketAdapter;
+import com.comphenix.protocol.events.PacketEvent;
 import lombok.Getter;
 import net.cogzmc.core.Core;
 import net.cogzmc.core.player.CPlayer;
 import net.cogzmc.core.player.CPlayerConnectionListener;
 import net.cogzmc.core.player.CPlayerJoinException;
-import net.cogzmc.util.RandomUtils;
+import net.cogzmc.core.util.LocationUtils;
+import net.cogzmc.core.util.Point;
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
-import org.bukkit.event.player.PlayerChangedWorldEvent;
-import org.bukkit.event.player.PlayerJoinEvent;
-import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.*;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.net.InetAddress;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Keeps track of every {@link net.cogzmc.core.effect.npc.AbstractMobNPC} so they can be re-sent to players when their
+ * client forgets about them (joining, respawning, changing worlds, teleporting, or moving out of view and back).
+ *
+ * NPCs are indexed by world and chunk, and each player has a set of NPC ids their client currently knows about, so
+ * these events only ever touch the NPCs around the player instead of every NPC on the server. An NPC crossing into
+ * another chunk is likewise spawned for players it came into view of and destroyed for those it left, and NPC packets
+ * are only sent to players whose client knows the NPC.
+ *
+ * This also owns the single ProtocolLib listener that dispatches interactions to spawned NPCs by entity id.
+ */
 public final class SoftNPCManager implements CPlayerConnectionListener, Listener {
     @Getter private static SoftNPCManager instance;
 
-    final Set<WeakReference<AbstractMobNPC>> mobRefs = new HashSet<>();
+    private final ReferenceQueue<AbstractMobNPC> referenceQueue = new ReferenceQueue<>();
+    private final Map<Integer, MobReference> mobsById = new HashMap<>();
+    /* World name (null for NPCs that show in every world) -> chunk key -> NPCs in that chunk */
+    private final Map<String, Map<Long, Set<MobReference>>> chunkIndex = new HashMap<>();
+    /* NPC ids that have been spawned on each player's client */
+    private final Map<CPlayer, Set<Integer>> knownMobs = new HashMap<>();
+    /* NPC ids each player has been explicitly added as a viewer for */
+    private final Map<CPlayer, Set<Integer>> viewedMobs = new HashMap<>();
+    /* Spawned NPCs by entity id, read from the netty thread by the interact watcher */
+    private final Map<Integer, AbstractMobNPC> spawnedMobs = new ConcurrentHashMap<>();
+    /* NPCs with changes waiting for the next flush, by identity since NPCs hash on their mutable state */
+    private final Set<AbstractMobNPC> pendingFlush = Collections.newSetFromMap(new IdentityHashMap<AbstractMobNPC, Boolean>());
+    private boolean flushScheduled = false;
 
     public SoftNPCManager() {
         instance = this;
         Bukkit.getPluginManager().registerEvents(this, Core.getInstance());
         Core.getPlayerManager().registerCPlayerConnectionListener(this);
+        ProtocolLibrary.getProtocolManager().addPacketListener(new InteractWatcher());
     }
 
-    private void ensureAllValid() {
-        Iterator<WeakReference<AbstractMobNPC>> iterator = mobRefs.iterator();
-        while (iterator.hasNext()) {
-            WeakReference<AbstractMobNPC> mob = iterator.next();
-            if (mob.get() == null) iterator.remove();
+    /* Index maintenance, called by the NPCs themselves */
+
+    void register(AbstractMobNPC mob, Collection<CPlayer> viewers) {
+        purgeCollected();
+        MobReference reference = new MobReference(mob, referenceQueue);
+        mobsById.put(reference.id, reference);
+        getChunk(reference.worldName, reference.chunkKey, true).add(reference);
+        for (CPlayer viewer : viewers) addViewing(viewer, mob);
+    }
+
+    void onMobMoved(AbstractMobNPC mob) {
+        MobReference reference = mobsById.get(mob.getId());
+        if (reference == null || reference.get() != mob) return;
+        long newKey = getChunkKey(mob.getLocation());
+        if (newKey == reference.chunkKey) return;
+        removeFromChunk(reference);
+        reference.chunkKey = newKey;
+        getChunk(reference.worldName, newKey, true).add(reference);
+        if (mob.isSpawned()) updateInView(mob);
+    }
+
+    void onMobSpawned(AbstractMobNPC mob) {
+        spawnedMobs.put(mob.getId(), mob);
+    }
+
+    void onMobDespawned(AbstractMobNPC mob) {
+        spawnedMobs.remove(mob.getId());
+    }
+
+    void queueFlush(AbstractMobNPC mob) {
+        pendingFlush.add(mob);
+        if (flushScheduled) return;
+        flushScheduled = true;
+        Bukkit.getScheduler().runTask(Core.getInstance(), new Runnable() {
+            @Override
+            public void run() {
+                flushAll();
+            }
+        });
+    }
+
+    private void flushAll() {
+        flushScheduled = false;
+        AbstractMobNPC[] mobs = pendingFlush.toArray(new AbstractMobNPC[pendingFlush.size()]);
+        pendingFlush.clear();
+        for (AbstractMobNPC mob : mobs) {
+            try {mob.flush();} catch (Exception e) {e.printStackTrace();}
         }
     }
 
+    void addViewing(CPlayer player, AbstractMobNPC mob) {
+        getIdSet(viewedMobs, player).add(mob.getId());
+    }
+
+    void removeViewing(CPlayer player, AbstractMobNPC mob) {
+        Set<Integer> ids = viewedMobs.get(player);
+        if (ids != null) ids.remove(mob.getId());
+    }
+
+    boolean isKnownBy(Player player, AbstractMobNPC mob) {
+        CPlayer onlinePlayer = Core.getOnlinePlayer(player);
+        if (onlinePlayer == null) return false;
+        Set<Integer> ids = knownMobs.get(onlinePlayer);
+        return ids != null && ids.contains(mob.getId());
+    }
+
+    boolean isInView(Player player, AbstractMobNPC mob) {
+        Location location = player.getLocation();
+        return isInRange(mob.getLocation(), location.getBlockX() >> 4, location.getBlockZ() >> 4, Bukkit.getViewDistance());
+    }
+
+    void markKnown(Player player, AbstractMobNPC mob) {
+        CPlayer onlinePlayer = Core.getOnlinePlayer(player);
+        if (onlinePlayer != null) getIdSet(knownMobs, onlinePlayer).add(mob.getId());
+    }
+
+    void markUnknown(Player player, AbstractMobNPC mob) {
+        CPlayer onlinePlayer = Core.getOnlinePlayer(player);
+        if (onlinePlayer == null) return;
+        Set<Integer> ids = knownMobs.get(onlinePlayer);
+        if (ids != null) ids.remove(mob.getId());
+    }
+
+    /* Events */
+
     @Override
     public void onPlayerLogin(CPlayer player, InetAddress address) throws CPlayerJoinException {}
 
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
-        ensureAllValid();
-        for (WeakReference<AbstractMobNPC> mobRef : mobRefs) {
-            final AbstractMobNPC npcMob = mobRef.get();
-            if (npcMob == null) continue;
-            if (npcMob.isSpawned() && npcMob.getViewers().size() == 0) {
-                npcMob.forceSpawn(event.getPlayer());
-            }
-        }
+        purgeCollected();
+        Player player = event.getPlayer();
+        spawnNearby(player, player.getLocation());
     }
 
     @Override
     public void onPlayerDisconnect(CPlayer player) {
-        ensureAllValid();
-        for (WeakReference<AbstractMobNPC> mobRef : mobRefs) {
-            final AbstractMobNPC npcMob = mobRef.get();
-            if (npcMob == null) continue;
-            if (npcMob.getViewers().contains(player)) npcMob.removeViewer(player);
+        purgeCollected();
+        knownMobs.remove(player);
+        Set<Integer> ids = viewedMobs.remove(player);
+        if (ids == null) return;
+        for (Integer id : ids) {
+            MobReference reference = mobsById.get(id);
+            if (reference == null) continue;
+            AbstractMobNPC npcMob = reference.get();
+            if (npcMob != null && npcMob.isViewer(player)) npcMob.removeViewer(player);
         }
     }
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerRespawn(PlayerRespawnEvent event) {
-        ensureAllValid();
+        purgeCollected();
         final CPlayer onlinePlayer = Core.getOnlinePlayer(event.getPlayer());
-        for (WeakReference<AbstractMobNPC> mobRef : mobRefs) {
-            final AbstractMobNPC npcMob = mobRef.get();
-            if (npcMob == null) continue;
-            if (!npcMob.isSpawned()) continue;
-            if (!npcMob.getWorld().equals(event.getRespawnLocation().getWorld())) continue;
-            Bukkit.getScheduler().runTask(Core.getInstance(), new Runnable() {
-                @Override
-                public void run() {
-                    npcMob.forceSpawn(onlinePlayer.getBukkitPlayer());
-                }
-            });
-        }
+        //The client forgets every entity when it respawns
+        knownMobs.remove(onlinePlayer);
+        final Location respawnLocation = event.getRespawnLocation();
+        Bukkit.getScheduler().runTask(Core.getInstance(), new Runnable() {
+            @Override
+            public void run() {
+                Player bukkitPlayer = onlinePlayer.getBukkitPlayer();
+                if (bukkitPlayer != null && bukkitPlayer.isOnline()) spawnNearby(bukkitPlayer, respawnLocation);
+            }
+        });
     }
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerWorldChange(PlayerChangedWorldEvent event) {
-        ensureAllValid();
-        for (WeakReference<AbstractMobNPC> mobRef : mobRefs) {
-            AbstractMobNPC mobNPC = mobRef.get();
-            if (mobNPC == null || mobNPC.getViewers().size() != 0 && RandomUtils.contains(mobNPC.getTargets(), event.getPlayer())) continue;
-            if (mobNPC.getWorld() == null || event.getPlayer().getWorld().equals(mobNPC.getWorld()))
-                mobNPC.forceSpawn(event.getPlayer());
-        }
+        purgeCollected();
+        Player player = event.getPlayer();
+        knownMobs.remove(Core.getOnlinePlayer(player));
+        spawnNearby(player, player.getLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerTeleport(PlayerTeleportEvent event) {
+        final Location to = event.getTo();
+        if (to == null || !to.getWorld().equals(event.getFrom().getWorld())) return; //handled by the world change event
+        if (!LocationUtils.crossesChunk(event.getFrom(), to)) return;
+        final Player player = event.getPlayer();
+        final boolean far = !isInRange(event.getFrom(), to.getBlockX() >> 4, to.getBlockZ() >> 4, Bukkit.getViewDistance());
+        Bukkit.getScheduler().runTask(Core.getInstance(), new Runnable() {
+            @Override
+            public void run() {
+                if (!player.isOnline()) return;
+                //Everything around where they were is unloaded on the client
+                if (far) forgetAll(player);
+                else forgetOutOfRange(player, to);
+                spawnNearby(player, to);
+            }
+        });
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent event) {
+        Location to = event.getTo();
+        if (!LocationUtils.crossesChunk(event.getFrom(), to)) return;
+        forgetOutOfRange(event.getPlayer(), to);
+        spawnNearby(event.getPlayer(), to);
     }
 
     public void removeAllEntities() {
-        ensureAllValid();
+        purgeCollected();
         LinkedHashSet<Integer> ids = new LinkedHashSet<>();
-        for (WeakReference<AbstractMobNPC> villagerRef : mobRefs) {
-            AbstractMobNPC abstractMobNPC = villagerRef.get();
+        for (MobReference reference : mobsById.values()) {
+            AbstractMobNPC abstractMobNPC = reference.get();
             if (abstractMobNPC == null) continue;
             ids.add(abstractMobNPC.getId());
             abstractMobNPC.spawned = false;
         }
+        knownMobs.clear();
+        spawnedMobs.clear();
         WrapperPlayServerEntityDestroy packet = new WrapperPlayServerEntityDestroy();
         int[] idsArray = new int[ids.size()];
         Integer[] idsIntegerArray = ids.toArray(new Integer[ids.size()]);
@@ -116,4 +246,176 @@ public final class SoftNPCManager implements CPlayerConnectionListener, Listener
             packet.sendPacket(player);
         }
     }
+
+    /* Internals */
+
+    private void spawnNearby(Player player, Location location) {
+        CPlayer onlinePlayer = Core.getOnlinePlayer(player);
+        if (onlinePlayer == null) return;
+        World world = location.getWorld();
+        Map<Long, Set<MobReference>> worldChunks = chunkIndex.get(world.getName());
+        Map<Long, Set<MobReference>> globalChunks = chunkIndex.get(null);
+        if (worldChunks == null && globalChunks == null) return;
+        Set<Integer> known = getIdSet(knownMobs, onlinePlayer);
+        int radius = Bukkit.getViewDistance();
+        int chunkX = location.getBlockX() >> 4, chunkZ = location.getBlockZ() >> 4;
+        for (int x = chunkX - radius; x <= chunkX + radius; x++) {
+            for (int z = chunkZ - radius; z <= chunkZ + radius; z++) {
+                long key = LocationUtils.getChunkKey(x, z);
+                if (worldChunks != null) spawnIn(worldChunks.get(key), player, onlinePlayer, world, known);
+                if (globalChunks != null) spawnIn(globalChunks.get(key), player, onlinePlayer, world, known);
+            }
+        }
+    }
+
+    /* The client drops entities in chunks it unloads, so NPCs that are now out of view are despawned and forgotten */
+    private void forgetOutOfRange(Player player, Location location) {
+        CPlayer onlinePlayer = Core.getOnlinePlayer(player);
+        if (onlinePlayer == null) return;
+        Set<Integer> known = knownMobs.get(onlinePlayer);
+        if (known == null || known.size() == 0) return;
+        int radius = Bukkit.getViewDistance();
+        int chunkX = location.getBlockX() >> 4, chunkZ = location.getBlockZ() >> 4;
+        List<Integer> forgotten = new ArrayList<>();
+        Iterator<Integer> iterator = known.iterator();
+        while (iterator.hasNext()) {
+            Integer id = iterator.next();
+            MobReference reference = mobsById.get(id);
+            AbstractMobNPC npcMob = reference == null ? null : reference.get();
+            if (npcMob != null && isInRange(npcMob.getLocation(), chunkX, chunkZ, radius)) continue;
+            iterator.remove();
+            forgotten.add(id);
+        }
+        sendDestroy(player, forgotten);
+    }
+
+    private void forgetAll(Player player) {
+        CPlayer onlinePlayer = Core.getOnlinePlayer(player);
+        if (onlinePlayer == null) return;
+        Set<Integer> known = knownMobs.remove(onlinePlayer);
+        if (known != null) sendDestroy(player, known);
+    }
+
+    /* An NPC that moved into another chunk is spawned for targets it came into view of, and destroyed for those it left */
+    private void updateInView(AbstractMobNPC mob) {
+        for (Player player : mob.getTargets()) {
+            if (player == null) continue;
+            boolean known = isKnownBy(player, mob);
+            boolean inView = isInView(player, mob);
+            if (inView && !known) mob.forceSpawn(player);
+            else if (!inView && known) mob.forceDespawn(player);
+        }
+    }
+
+    private static void sendDestroy(Player player, Collection<Integer> ids) {
+        if (ids.size() == 0) return;
+        int[] idsArray = new int[ids.size()];
+        int x = 0;
+        for (Integer id : ids) idsArray[x++] = id;
+        WrapperPlayServerEntityDestroy packet = new WrapperPlayServerEntityDestroy();
+        packet.setEntities(idsArray);
+        packet.sendPacket(player);
+    }
+
+    private static boolean isInRange(Point point, int chunkX, int chunkZ, int radius) {
+        return Math.abs(((int) Math.floor(point.getX()) >> 4) - chunkX) <= radius && Math.abs(((int) Math.floor(point.getZ()) >> 4) - chunkZ) <= radius;
+    }
+
+    private static boolean isInRange(Location location, int chunkX, int chunkZ, int radius) {
+        return Math.abs((location.getBlockX() >> 4) - chunkX) <= radius && Math.abs((location.getBlockZ() >> 4) - chunkZ) <= radius;
+    }
+
+    private void spawnIn(Set<MobReference> references, Player player, CPlayer onlinePlayer, World world, Set<Integer> known) {
+        if (references == null) return;
+        for (MobReference reference : references) {
+            if (known.contains(reference.id)) continue;
+            AbstractMobNPC npcMob = reference.get();
+            if (npcMob == null || !npcMob.isSpawned()) continue;
+            if (npcMob.getWorld() != null && !npcMob.getWorld().equals(world)) continue;
+            if (!npcMob.isVisibleTo(onlinePlayer)) continue;
+            npcMob.forceSpawn(player);
+        }
+    }
+
+    private void purgeCollected() {
+        Reference<? extends AbstractMobNPC> collected;
+        while ((collected = referenceQueue.poll()) != null) {
+            MobReference reference = (MobReference) collected;
+            removeFromChunk(reference);
+            if (mobsById.get(reference.id) == reference) mobsById.remove(reference.id);
+            for (Set<Integer> ids : knownMobs.values()) ids.remove(reference.id);
+            for (Set<Integer> ids : viewedMobs.values()) ids.remove(reference.id);
+            //The id isn't released, clients that never got a destroy still have an entity with it
+        }
+    }
+
+    private Set<MobReference> getChunk(String worldName, long chunkKey, boolean create) {
+        Map<Long, Set<MobReference>> chunks = chunkIndex.get(worldName);
+        if (chunks == null) {
+            if (!create) return null;
+            chunks = new HashMap<>();
+            chunkIndex.put(worldName, chunks);
+        }
+        Set<MobReference> references = chunks.get(chunkKey);
+        if (references == null && create) {
+            references = new HashSet<>();
+            chunks.put(chunkKey, references);
+        }
+        return references;
+    }
+
+    private void removeFromChunk(MobReference reference) {
+        Map<Long, Set<MobReference>> chunks = chunkIndex.get(reference.worldName);
+        if (chunks == null) return;
+        Set<MobReference> references = chunks.get(reference.chunkKey);
+        if (references == null) return;
+        references.remove(reference);
+        if (references.size() == 0) chunks.remove(reference.chunkKey);
+        if (chunks.size() == 0) chunkIndex.remove(reference.worldName);
+    }
+
+    private static Set<Integer> getIdSet(Map<CPlayer, Set<Integer>> map, CPlayer player) {
+        Set<Integer> ids = map.get(player);
+        if (ids == null) {
+            ids = new HashSet<>();
+            map.put(player, ids);
+        }
+        return ids;
+    }
+
+    private static long getChunkKey(Point point) {
+        return LocationUtils.getChunkKey((int) Math.floor(point.getX()) >> 4, (int) Math.floor(point.getZ()) >> 4);
+    }
+
+    private final class InteractWatcher extends PacketAdapter {
+        public InteractWatcher() {
+            super(Core.getInstance(), PacketType.Play.Client.USE_ENTITY);
+        }
+
+        @Override
+        public void onPacketReceiving(PacketEvent event) {
+            WrapperPlayClientUseEntity packet = new WrapperPlayClientUseEntity(event.getPacket());
+            AbstractMobNPC watchingFor = spawnedMobs.get(packet.getTargetID());
+            if (watchingFor == null) return;
+            CPlayer onlinePlayer = Core.getOnlinePlayer(event.getPlayer());
+            ClickAction clickAction = ClickAction.valueOf(packet.getMouse());
+            for (NPCObserver npcObserver : watchingFor.getObservers()) {
+                try {npcObserver.onPlayerInteract(onlinePlayer, watchingFor, clickAction);} catch (Exception e) {e.printStackTrace();}
+            }
+            event.setCancelled(true);
+        }
+    }
+
+    private static final class MobReference extends WeakReference<AbstractMobNPC> {
+        private final int id;
+        private final String worldName;
+        private long chunkKey;
+
+        private MobReference(AbstractMobNPC referent, ReferenceQueue<? super AbstractMobNPC> queue) {
+            super(referent, queue);
+            this.id = referent.getId();
+            this.worldName = referent.getWorld() == null ? null : referent.getWorld().getName();
+            this.chunkKey = getChunkKey(referent.getLocation());
+        }
+    }
 }
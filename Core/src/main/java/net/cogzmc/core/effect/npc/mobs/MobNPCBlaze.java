@@ -33,7 +33,7 @@ public final class MobNPCBlaze extends AbstractMobNPC {
     @Override
     protected void onDataWatcherUpdate() {
         super.onDataWatcherUpdate();
-        if (onFire) dataWatcher.setObject(16, (byte)1);
-        else if (dataWatcher.getObject(16) != null) dataWatcher.removeObject(16);
+        if (onFire) setMetadata(16, (byte)1);
+        else removeMetadata(16);
     }
 }
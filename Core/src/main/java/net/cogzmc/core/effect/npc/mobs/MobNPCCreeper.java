@@ -34,8 +34,8 @@ public final class MobNPCCreeper extends AbstractAgeableMobNPC {
     @Override
     protected void onDataWatcherUpdate() {
         super.onDataWatcherUpdate();
-        dataWatcher.setObject(16, (byte)(fused ? 1 : -1));
-        if (charged) dataWatcher.setObject(17, (byte)1);
-        else if (dataWatcher.getObject(17) != null) dataWatcher.removeObject(17);
+        setMetadata(16, (byte)(fused ? 1 : -1));
+        if (charged) setMetadata(17, (byte)1);
+        else removeMetadata(17);
     }
 }
@@ -36,10 +36,10 @@ public final class MobNPCEnderman extends AbstractMobNPC {
     protected void onDataWatcherUpdate() {
         super.onDataWatcherUpdate();
         if (carriedItemStack != null) {
-            dataWatcher.setObject(16, carriedItemStack.getTypeId());
-            dataWatcher.setObject(17, carriedItemStack.getDurability());
+            setMetadata(16, carriedItemStack.getTypeId());
+            setMetadata(17, carriedItemStack.getDurability());
         }
-        if (screaming) dataWatcher.setObject(18, (byte)1);
-        else if (dataWatcher.getObject(18) != null) dataWatcher.removeObject(18);
+        if (screaming) setMetadata(18, (byte)1);
+        else removeMetadata(18);
     }
 }
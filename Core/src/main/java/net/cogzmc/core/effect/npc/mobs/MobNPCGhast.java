@@ -33,7 +33,7 @@ public final class MobNPCGhast extends AbstractMobNPC {
     @Override
     protected void onDataWatcherUpdate() {
         super.onDataWatcherUpdate();
-        if (attacking) dataWatcher.setObject(16, 1);
-        else if (dataWatcher.getObject(16) != null) dataWatcher.removeObject(16);
+        if (attacking) setMetadata(16, 1);
+        else removeMetadata(16);
     }
 }
@@ -63,11 +63,11 @@ public final class MobNPCHorse extends AbstractAgeableMobNPC {
         if (eating) bools |= 0x20;
         if (rearing) bools |= 0x40;
         if (mouthOpen) bools |= 0x80;
-        dataWatcher.setObject(16, bools);
-        dataWatcher.setObject(19, (byte)variant.ordinal());
-        dataWatcher.setObject(20, color.ordinal() & 0xFF | style.ordinal() << 8);
-        dataWatcher.removeObject(17); //Remove the name from the superclass.
-        dataWatcher.setObject(21, getOwnerName());
-        dataWatcher.setObject(22, armorType.ordinal());
+        setMetadata(16, bools);
+        setMetadata(19, (byte)variant.ordinal());
+        setMetadata(20, color.ordinal() & 0xFF | style.ordinal() << 8);
+        removeMetadata(17); //Remove the name from the superclass.
+        setMetadata(21, getOwnerName());
+        setMetadata(22, armorType.ordinal());
     }
 }
@@ -33,8 +33,8 @@ public final class MobNPCIronGolem extends AbstractMobNPC {
     @Override
     protected void onDataWatcherUpdate() {
         super.onDataWatcherUpdate();
-        if (playerCreated) dataWatcher.setObject(16, (byte)1);
-        else if (dataWatcher.getObject(16) != null) dataWatcher.removeObject(16);
+        if (playerCreated) setMetadata(16, (byte)1);
+        else removeMetadata(16);
     }
 
     public void playArmThrowing(Set<CPlayer> players) {
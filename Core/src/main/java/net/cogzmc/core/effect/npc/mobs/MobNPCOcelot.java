@@ -35,6 +35,6 @@ public final class MobNPCOcelot extends AbstractTameableMobNPC {
     protected void onDataWatcherUpdate() {
         super.onDataWatcherUpdate();
         if (!isTame() && (ocelotType == null || ocelotType.getId() != 1)) ocelotType = Ocelot.Type.WILD_OCELOT;
-        dataWatcher.setObject(18, (byte)ocelotType.getId());
+        setMetadata(18, (byte)ocelotType.getId());
     }
 }
@@ -33,7 +33,7 @@ public final class MobNPCPig extends AbstractAgeableMobNPC {
     @Override
     protected void onDataWatcherUpdate() {
         super.onDataWatcherUpdate();
-        if (saddled) dataWatcher.setObject(16, (byte)1);
-        else if (dataWatcher.getObject(16) != null) dataWatcher.removeObject(16);
+        if (saddled) setMetadata(16, (byte)1);
+        else removeMetadata(16);
     }
 }
@@ -35,7 +35,7 @@ public final class MobNPCSheep extends AbstractAnimalNNPC {
     protected void onDataWatcherUpdate() {
         super.onDataWatcherUpdate();
         //noinspection deprecation
-        dataWatcher.setObject(16, color.getData());
+        setMetadata(16, color.getData());
     }
 
     public void playGrassEat() {
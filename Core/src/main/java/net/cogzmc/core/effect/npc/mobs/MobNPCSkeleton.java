@@ -33,7 +33,7 @@ public final class MobNPCSkeleton extends AbstractGearMobNPC {
     @Override
     protected void onDataWatcherUpdate() {
         super.onDataWatcherUpdate();
-        if (wither) dataWatcher.setObject(13, (byte)1);
-        else if (dataWatcher.getObject(13) !=  null) dataWatcher.removeObject(13);
+        if (wither) setMetadata(13, (byte)1);
+        else removeMetadata(13);
     }
 }
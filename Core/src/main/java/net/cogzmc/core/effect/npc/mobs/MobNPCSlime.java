@@ -48,6 +48,6 @@ public class MobNPCSlime extends AbstractMobNPC {
     @Override
     protected void onDataWatcherUpdate() {
         super.onDataWatcherUpdate();
-        dataWatcher.setObject(16, (byte)size);
+        setMetadata(16, (byte)size);
     }
 }
@@ -33,7 +33,7 @@ public class MobNPCSpider extends AbstractMobNPC {
     @Override
     protected void onDataWatcherUpdate() {
         super.onDataWatcherUpdate();
-        if (climbing) dataWatcher.setObject(16, (byte)1);
-        else if (dataWatcher.getObject(16) != null) dataWatcher .removeObject(16);
+        if (climbing) setMetadata(16, (byte)1);
+        else removeMetadata(16);
     }
 }
@@ -45,8 +45,8 @@ public final class MobNPCVillager extends AbstractMobNPC {
 
     @Override
     protected void onDataWatcherUpdate() {
-        if (profession != null) dataWatcher.setObject(16, profession.getId()); //Profession
-        else if (dataWatcher.getObject(16) != null) dataWatcher.removeObject(16);
+        if (profession != null) setMetadata(16, profession.getId()); //Profession
+        else removeMetadata(16);
     }
 
     public void playAngryVillagerAnimation() {
@@ -33,7 +33,7 @@ public class MobNPCWitch extends AbstractMobNPC {
     @Override
     protected void onDataWatcherUpdate() {
         super.onDataWatcherUpdate();
-        if (agressive) dataWatcher.setObject(21, 1);
-        else if (dataWatcher.getObject(21) != null) dataWatcher.removeObject(21);
+        if (agressive) setMetadata(21, 1);
+        else removeMetadata(21);
     }
 }
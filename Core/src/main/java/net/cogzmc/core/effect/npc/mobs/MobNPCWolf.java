@@ -46,11 +46,11 @@ public final class MobNPCWolf extends AbstractTameableMobNPC {
         super.onDataWatcherUpdate();
         byte object = (byte) dataWatcher.getObject(16);
         if (angry) object |= 0x02;
-        dataWatcher.setObject(16, object);
-        dataWatcher.setObject(18, getHealth());
-        if (begging) dataWatcher.setObject(19, ((byte) 1));
-        else if (dataWatcher.getObject(19) != null) dataWatcher.removeObject(19);
+        setMetadata(16, object);
+        setMetadata(18, getHealth());
+        if (begging) setMetadata(19, ((byte) 1));
+        else removeMetadata(19);
         //noinspection deprecation
-        if (isTame()) dataWatcher.setObject(20, collarColor.getWoolData());
+        if (isTame()) setMetadata(20, collarColor.getWoolData());
     }
 }
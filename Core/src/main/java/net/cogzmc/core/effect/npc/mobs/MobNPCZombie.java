@@ -35,14 +35,14 @@ public class MobNPCZombie extends AbstractGearMobNPC {
     @Override
     protected void onDataWatcherUpdate() {
         super.onDataWatcherUpdate();
-        if (child) dataWatcher.setObject(12, (byte) 1);
-        else if (dataWatcher.getObject(12) != null) dataWatcher.removeObject(12);
+        if (child) setMetadata(12, (byte) 1);
+        else removeMetadata(12);
 
-        if (villager) dataWatcher.setObject(13, (byte)1);
-        else if (dataWatcher.getObject(13) != null) dataWatcher.removeObject(13);
+        if (villager) setMetadata(13, (byte)1);
+        else removeMetadata(13);
 
-        if (converting) dataWatcher.setObject(14, (byte)1);
-        else if (dataWatcher.getObject(14) != null) dataWatcher.removeObject(14);
+        if (converting) setMetadata(14, (byte)1);
+        else removeMetadata(14);
     }
 
     public void playBecomeVillager() {
@@ -7,7 +7,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import net.cogzmc.core.player.CPlayer;
 import org.bukkit.Location;
-import org.bukkit.entity.Player;
 
 /**
  * Used to represent a single particle being emitted at a location, and can be sent to many players or a single player
@@ -87,16 +86,13 @@ public final class ParticleEffect {
     }
 
     /**
-     * Emits a particle effect to all players within a defined radius.
+     * Emits a particle effect to all players within a defined radius. Only players in the chunks around the location
+     * are checked, and the particle is sent along with every other particle emitted to each player this tick. This can be
+     * called from any thread, but off the main thread the particle is only sent on the next tick.
      * @param radius The radius to send the particle within.
      */
     public void emitGlobally(Long radius, Location location) {
-        double distanceSquared = Math.pow(radius, 2); //Distance squared is faster than doing sqrt always.
-        WrapperPlayServerWorldParticles packet = getPacket(location);
-        for (Player player : location.getWorld().getPlayers()) {
-            //Determines if the distance from where our particle will be is less than our radius, and marks for sending if so
-            if (player.getLocation().distanceSquared(location) <= distanceSquared) packet.sendPacket(player);
-        }
+        ParticleManager.getInstance().emit(getPacket(location), location, radius);
     }
 
     public ParticleEffect withSpread(@NonNull Float spread) {
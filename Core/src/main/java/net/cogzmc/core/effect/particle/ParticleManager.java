@@ -0,0 +1,174 @@
+package net.cogzmc.core.effect.particle;
+
+import com.comphenix.packetwrapper.WrapperPlayServerWorldParticles;
+import lombok.Getter;
+import net.cogzmc.core.Core;
+import net.cogzmc.core.util.LocationUtils;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.*;
+
+import java.util.*;
+
+/**
+ * Keeps a per-world grid of which chunk every player is in, so {@link ParticleEffect#emitGlobally(Long, Location)}
+ * only has to look at players in the chunks around the particle.
+ *
+ * Particles emitted this way are queued per player and sent together once per tick. All of the state here belongs to
+ * the main thread, particles emitted from other threads are sent from the main thread on the next tick.
+ */
+public final class ParticleManager implements Listener {
+    @Getter private static ParticleManager instance;
+
+    /* World name -> chunk key -> players in that chunk */
+    private final Map<String, Map<Long, Set<Player>>> playerGrid = new HashMap<>();
+    private final Map<Player, Long> playerChunks = new HashMap<>();
+    private final Map<Player, String> playerWorlds = new HashMap<>();
+    private final Map<Player, List<WrapperPlayServerWorldParticles>> pendingParticles = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+
+    public ParticleManager() {
+        instance = this;
+        Bukkit.getPluginManager().registerEvents(this, Core.getInstance());
+        for (Player player : Bukkit.getOnlinePlayers()) updatePlayer(player, player.getLocation());
+    }
+
+    void emit(final WrapperPlayServerWorldParticles packet, Location location, final double radius) {
+        //The grid and the queue are only touched on the main thread, emissions from anywhere else are handed over to it
+        if (!Bukkit.isPrimaryThread()) {
+            final Location emittedAt = location.clone();
+            Bukkit.getScheduler().runTask(Core.getInstance(), new Runnable() {
+                @Override
+                public void run() {
+                    emit(packet, emittedAt, radius);
+                }
+            });
+            return;
+        }
+        World world = location.getWorld();
+        double distanceSquared = radius * radius;
+        int chunkRadius = (int) Math.ceil(radius / 16D);
+        int cells = (2 * chunkRadius + 1) * (2 * chunkRadius + 1);
+        List<Player> worldPlayers = world.getPlayers();
+        //For huge radii it's cheaper to just check everyone in the world
+        if (cells > worldPlayers.size()) {
+            for (Player player : worldPlayers) {
+                if (player.getLocation().distanceSquared(location) <= distanceSquared) queue(player, packet);
+            }
+            return;
+        }
+        Map<Long, Set<Player>> chunks = playerGrid.get(world.getName());
+        if (chunks == null) return;
+        int chunkX = location.getBlockX() >> 4, chunkZ = location.getBlockZ() >> 4;
+        for (int x = chunkX - chunkRadius; x <= chunkX + chunkRadius; x++) {
+            for (int z = chunkZ - chunkRadius; z <= chunkZ + chunkRadius; z++) {
+                Set<Player> players = chunks.get(LocationUtils.getChunkKey(x, z));
+                if (players == null) continue;
+                for (Player player : players) {
+                    if (player.getLocation().distanceSquared(location) <= distanceSquared) queue(player, packet);
+                }
+            }
+        }
+    }
+
+    private void queue(Player player, WrapperPlayServerWorldParticles packet) {
+        List<WrapperPlayServerWorldParticles> packets = pendingParticles.get(player);
+        if (packets == null) {
+            packets = new ArrayList<>();
+            pendingParticles.put(player, packets);
+        }
+        packets.add(packet);
+        if (flushScheduled) return;
+        flushScheduled = true;
+        Bukkit.getScheduler().runTask(Core.getInstance(), new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+    }
+
+    private void flush() {
+        flushScheduled = false;
+        for (Map.Entry<Player, List<WrapperPlayServerWorldParticles>> entry : pendingParticles.entrySet()) {
+            Player player = entry.getKey();
+            if (!player.isOnline()) continue;
+            for (WrapperPlayServerWorldParticles packet : entry.getValue()) packet.sendPacket(player);
+        }
+        pendingParticles.clear();
+    }
+
+    private void updatePlayer(Player player, Location location) {
+        String worldName = location.getWorld().getName();
+        long chunkKey = LocationUtils.getChunkKey(location);
+        Long oldChunkKey = playerChunks.get(player);
+        String oldWorldName = playerWorlds.get(player);
+        if (oldChunkKey != null && oldChunkKey == chunkKey && worldName.equals(oldWorldName)) return;
+        removePlayer(player);
+        Map<Long, Set<Player>> chunks = playerGrid.get(worldName);
+        if (chunks == null) {
+            chunks = new HashMap<>();
+            playerGrid.put(worldName, chunks);
+        }
+        Set<Player> players = chunks.get(chunkKey);
+        if (players == null) {
+            players = new HashSet<>();
+            chunks.put(chunkKey, players);
+        }
+        players.add(player);
+        playerChunks.put(player, chunkKey);
+        playerWorlds.put(player, worldName);
+    }
+
+    private void removePlayer(Player player) {
+        Long chunkKey = playerChunks.remove(player);
+        String worldName = playerWorlds.remove(player);
+        if (chunkKey == null || worldName == null) return;
+        Map<Long, Set<Player>> chunks = playerGrid.get(worldName);
+        if (chunks == null) return;
+        Set<Player> players = chunks.get(chunkKey);
+        if (players == null) return;
+        players.remove(player);
+        if (players.size() == 0) chunks.remove(chunkKey);
+        if (chunks.size() == 0) playerGrid.remove(worldName);
+    }
+
+    //Event handlers
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        updatePlayer(event.getPlayer(), event.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        removePlayer(event.getPlayer());
+        pendingParticles.remove(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent event) {
+        if (!LocationUtils.crossesChunk(event.getFrom(), event.getTo())) return;
+        updatePlayer(event.getPlayer(), event.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerTeleport(PlayerTeleportEvent event) {
+        if (event.getTo() == null) return;
+        updatePlayer(event.getPlayer(), event.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerChangeWorld(PlayerChangedWorldEvent event) {
+        updatePlayer(event.getPlayer(), event.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(PlayerRespawnEvent event) {
+        updatePlayer(event.getPlayer(), event.getRespawnLocation());
+    }
+}
@@ -0,0 +1,83 @@
+package net.cogzmc.core.modular;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A format from a module's formats file, split once into literal text and {@code <placeholder>} slots so rendering it is
+ * a single pass over a {@link StringBuilder}.
+ *
+ * Used by {@link net.cogzmc.core.modular.ModularPlugin#getFormatRaw(String, String[]...)}.
+ */
+final class FormatTemplate {
+    private final static Pattern PLACEHOLDER = Pattern.compile("<[^<>\\s]+>");
+
+    /* Alternating literal text and placeholders, starting with (possibly empty) literal text */
+    private final String[] parts;
+    private final int literalLength;
+    private final String raw;
+
+    FormatTemplate(String raw) {
+        this.raw = raw;
+        List<String> parts = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(raw);
+        int last = 0, literalLength = 0;
+        while (matcher.find()) {
+            parts.add(raw.substring(last, matcher.start()));
+            parts.add(matcher.group());
+            literalLength += matcher.start() - last;
+            last = matcher.end();
+        }
+        parts.add(raw.substring(last));
+        literalLength += raw.length() - last;
+        this.parts = parts.toArray(new String[parts.size()]);
+        this.literalLength = literalLength;
+    }
+
+    String render(String[]... formatters) {
+        if (formatters == null || formatters.length == 0 || parts.length == 1) return applyOtherFormatters(raw, formatters);
+        StringBuilder builder = new StringBuilder(literalLength + 16 * (parts.length / 2));
+        for (int x = 0; x < parts.length; x++) {
+            if (x % 2 == 0) {
+                builder.append(parts[x]);
+                continue;
+            }
+            String value = getValue(parts[x], formatters);
+            builder.append(value == null ? parts[x] : value);
+        }
+        return applyOtherFormatters(builder.toString(), formatters);
+    }
+
+    private static String getValue(String placeholder, String[]... formatters) {
+        for (String[] formatter : formatters) {
+            if (formatter == null || formatter.length < 2) continue; //Validate the length
+            if (placeholder.equals(formatter[0])) return formatter[1];
+        }
+        return null;
+    }
+
+    /* Formatters that aren't <placeholders> still get replaced anywhere in the string, like they always have been */
+    private static String applyOtherFormatters(String string, String[]... formatters) {
+        if (formatters == null) return string;
+        for (String[] formatter : formatters) {
+            if (formatter == null || formatter.length < 2) continue;
+            if (formatter[0] == null || formatter[1] == null) continue;
+            if (isPlaceholder(formatter[0])) continue;
+            string = string.replace(formatter[0], formatter[1]);
+        }
+        return string;
+    }
+
+    /* Same as matching PLACEHOLDER, without creating a matcher on every call */
+    private static boolean isPlaceholder(String string) {
+        int length = string.length();
+        if (length < 3 || string.charAt(0) != '<' || string.charAt(length - 1) != '>') return false;
+        for (int x = 1; x < length - 1; x++) {
+            char c = string.charAt(x);
+            if (c == '<' || c == '>' || Character.isWhitespace(c)) return false;
+        }
+        return true;
+    }
+}
@@ -16,8 +16,14 @@ import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.event.Listener;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public abstract class ModularPlugin extends JavaPlugin {
+    private final static FormatTemplate MISSING_FORMAT = new FormatTemplate("");
+
     private YAMLConfigurationFile formatsFile;
+    private final Map<String, FormatTemplate> formatTemplates = new ConcurrentHashMap<>();
     @Getter private ModuleMeta meta;
     @Getter private ModuleCommandMap commandMap;
 
@@ -89,16 +95,27 @@ public abstract class ModularPlugin extends JavaPlugin {
     /* Formatting methods */
 
     public final String getFormatRaw(String key, String[]... formatters) {
+        FormatTemplate template = getFormatTemplate(key);
+        if (template == MISSING_FORMAT) return null; //The formats file doesn't have this key
+        return template.render(formatters);
+    }
+
+    /**
+     * Reloads the formats file from disk, and throws away every compiled format.
+     */
+    public final void reloadFormats() {
+        formatsFile.reloadConfig();
+        formatTemplates.clear();
+    }
+
+    private FormatTemplate getFormatTemplate(String key) {
+        FormatTemplate template = formatTemplates.get(key);
+        if (template != null) return template;
         FileConfiguration config = formatsFile.getConfig(); //Get the formats file
-        if (!config.contains(key)) return null; //Check if it has this format key, and if not return null
-        String unFormattedString = ChatColor.translateAlternateColorCodes('&',config.getString(key)); //Get the un-formatted key
-        if (formatters == null) return unFormattedString;
-        for (String[] formatter : formatters) { //Iterate through the formatters
-            if (formatter.length < 2) continue; //Validate the length
-            if (formatter[0] == null || formatter[1] == null) continue;
-            unFormattedString = unFormattedString.replace(formatter[0], formatter[1]); //Replace all in the unformatted string
-        }
-        return unFormattedString; //Return
+        //Compile the format once, with colors already translated
+        template = config.contains(key) ? new FormatTemplate(ChatColor.translateAlternateColorCodes('&', config.getString(key))) : MISSING_FORMAT;
+        formatTemplates.put(key, template);
+        return template;
     }
 
     public final String getFormat(String key, boolean prefix, String[]... formatters) {
@@ -117,7 +134,7 @@ public abstract class ModularPlugin extends JavaPlugin {
     }
 
     public final boolean hasFormat(String key) {
-        return formatsFile.getConfig().contains(key);
+        return getFormatTemplate(key) != MISSING_FORMAT;
     }
 
     public final CPlayerManager getPlayerManager() {
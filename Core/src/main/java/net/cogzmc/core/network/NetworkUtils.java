@@ -29,6 +29,7 @@ public final class NetworkUtils {
              */
             if (allFields == annotationPresent) continue;
             //And adds them when they have a NetCommandField annotation.
+            field.setAccessible(true);
             arguments.put(field.getName(), field.get(command));
         }
         object.put(NetworkKeys.NET_COMMAND_ARGUMENTS.getValue(), arguments);
@@ -61,6 +61,29 @@ public final class CMongoPlayerManager extends CMongoPlayerRepository implements
         return super.getOfflinePlayerByUUID(uuid);
     }
 
+    @Override
+    public List<COfflinePlayer> getOfflinePlayersByUUIDS(List<UUID> uuids) {
+        //Online players are used as they are, and everyone else is found with a single query
+        Map<UUID, COfflinePlayer> players = new HashMap<>();
+        for (CPlayer player : this) {
+            players.put(player.getUniqueIdentifier(), player);
+        }
+        List<UUID> offline = new ArrayList<>();
+        for (UUID uuid : uuids) {
+            if (!players.containsKey(uuid)) offline.add(uuid);
+        }
+        if (offline.size() > 0) {
+            for (COfflinePlayer player : super.getOfflinePlayersByUUIDS(offline)) {
+                players.put(player.getUniqueIdentifier(), player);
+            }
+        }
+        List<COfflinePlayer> result = new ArrayList<>();
+        for (UUID uuid : uuids) {
+            if (players.containsKey(uuid)) result.add(players.get(uuid));
+        }
+        return result;
+    }
+
     @Override
     public List<COfflinePlayer> getOfflinePlayerByName(String username) {
         CPlayer onlinePlayer;
@@ -3,19 +3,33 @@ package net.cogzmc.core.player.scoreboard;
 import com.comphenix.packetwrapper.WrapperPlayServerScoreboardDisplayObjective;
 import com.comphenix.packetwrapper.WrapperPlayServerScoreboardObjective;
 import com.comphenix.packetwrapper.WrapperPlayServerScoreboardScore;
+import com.comphenix.packetwrapper.WrapperPlayServerScoreboardTeam;
 import lombok.*;
 import net.cogzmc.core.Core;
 import net.cogzmc.core.player.CPlayer;
 import org.apache.commons.lang.NotImplementedException;
 import org.bukkit.Bukkit;
-
-import java.util.HashMap;
-import java.util.Map;
-
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+import java.util.*;
+
+/**
+ * Manages the prefix, suffix and sidebar for a single player.
+ *
+ * The sidebar is double buffered. The setters only change the back buffer (the sidebar text and title), and once per
+ * tick the back buffer is compared against the last frame that was sent. Only lines that changed are sent. Every
+ * line is shown through a fixed, invisible score entry whose text lives in a team prefix and suffix that is only sent
+ * to this player, so a line that changes text but keeps its score is a single team update rather than a score removal
+ * and re-add (which flickers).
+ */
 @Data
+@EqualsAndHashCode(of = "player")
 public final class ScoreboardAttachment {
     private final static String TABLIST_POINTS_OBJECTIVE = "TABOBJPOINT";
     private final static String SIDEBAR_OBJECTIVE = "SIDEBAROBJ";
+    private final static String SIDEBAR_TEAM_PREFIX = "SIDEBARLINE";
+    private final static ChatColor[] SIDEBAR_ENTRIES = ChatColor.values();
 
     private final CPlayer player;
     @Getter(AccessLevel.PACKAGE) private final Map<String, Integer> text = new HashMap<>();
@@ -23,6 +37,13 @@ public final class ScoreboardAttachment {
     private String suffix = "";
     private String sideTitle = "Scoreboard";
 
+    /* The last frame sent to the client: text -> line slot, score of each slot, and the title */
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private final Map<String, Integer> sentLines = new HashMap<>();
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private final Map<Integer, Integer> sentScores = new HashMap<>();
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private final Set<Integer> createdLineTeams = new HashSet<>();
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private String sentTitle;
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private boolean flushScheduled = false;
+
     public ScoreboardAttachment(CPlayer player) {
         this.player = player;
         Bukkit.getScheduler().runTask(Core.getInstance(), new Runnable() {
@@ -45,12 +66,12 @@ public final class ScoreboardAttachment {
 
     public void setSideText(@NonNull String string, @NonNull Integer integer) {
         this.text.put(string, integer);
-        createOrUpdateSidebarText(string, integer);
+        scheduleFlush();
     }
 
     public void setSideTitle(String title) {
         this.sideTitle = title;
-        updateTitle();
+        scheduleFlush();
     }
 
     public void setListPoints(Integer points) {
@@ -60,7 +81,7 @@ public final class ScoreboardAttachment {
     public void removeSideItem(String item) {
         if (!this.text.containsKey(item)) throw new IllegalArgumentException("This is not in the scoreboard!");
         this.text.remove(item);
-
+        scheduleFlush();
     }
 
     private void updateTeam() {
@@ -68,11 +89,128 @@ public final class ScoreboardAttachment {
         ScoreboardManager.getInstance().setPlayerTeam(player, team);
     }
 
+    private void scheduleFlush() {
+        if (flushScheduled) return;
+        flushScheduled = true;
+        Bukkit.getScheduler().runTask(Core.getInstance(), new Runnable() {
+            @Override
+            public void run() {
+                flushScheduled = false;
+                if (player.isOnline()) flushSidebar();
+            }
+        });
+    }
+
+    /**
+     * Diffs the back buffer against the last sent frame, and sends only what changed.
+     */
+    private void flushSidebar() {
+        Player bukkitPlayer = player.getBukkitPlayer();
+        if (!sideTitle.equals(sentTitle)) {
+            updateTitle(bukkitPlayer);
+            sentTitle = sideTitle;
+        }
+        //Lines that are no longer in the back buffer free up their slot, grouped by the score they're showing
+        Map<Integer, Deque<Integer>> freedSlotsByScore = new HashMap<>();
+        Iterator<Map.Entry<String, Integer>> iterator = sentLines.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Integer> sentLine = iterator.next();
+            if (text.containsKey(sentLine.getKey())) continue;
+            iterator.remove();
+            Integer slot = sentLine.getValue();
+            getSlots(freedSlotsByScore, sentScores.get(slot)).add(slot);
+        }
+        //Lines that were already sent only need their score updated, if it changed
+        List<Map.Entry<String, Integer>> newLines = new ArrayList<>();
+        for (Map.Entry<String, Integer> line : text.entrySet()) {
+            Integer slot = sentLines.get(line.getKey());
+            if (slot == null) newLines.add(line);
+            else if (!line.getValue().equals(sentScores.get(slot))) setLineScore(bukkitPlayer, slot, line.getValue());
+        }
+        //New lines first take a freed slot with the same score, so only the text changes
+        Iterator<Map.Entry<String, Integer>> newLineIterator = newLines.iterator();
+        while (newLineIterator.hasNext()) {
+            Map.Entry<String, Integer> line = newLineIterator.next();
+            Deque<Integer> slots = freedSlotsByScore.get(line.getValue());
+            if (slots == null || slots.size() == 0) continue;
+            Integer slot = slots.poll();
+            setLineText(bukkitPlayer, slot, line.getKey());
+            sentLines.put(line.getKey(), slot);
+            newLineIterator.remove();
+        }
+        //Then any other freed slot, and then slots that have never been used
+        Deque<Integer> remainingFreedSlots = new ArrayDeque<>();
+        for (Deque<Integer> slots : freedSlotsByScore.values()) remainingFreedSlots.addAll(slots);
+        for (Map.Entry<String, Integer> line : newLines) {
+            Integer slot = remainingFreedSlots.poll();
+            if (slot == null) slot = getUnusedSlot();
+            if (slot == null) continue; //The sidebar can't show this many lines anyway
+            setLineText(bukkitPlayer, slot, line.getKey());
+            setLineScore(bukkitPlayer, slot, line.getValue());
+            sentLines.put(line.getKey(), slot);
+        }
+        //And anything left over is removed from the sidebar
+        for (Integer slot : remainingFreedSlots) {
+            removeSidebarEntry(bukkitPlayer, getSlotEntry(slot));
+            sentScores.remove(slot);
+        }
+    }
+
+    private Integer getUnusedSlot() {
+        for (int slot = 0; slot < SIDEBAR_ENTRIES.length; slot++) {
+            if (!sentScores.containsKey(slot) && !sentLines.containsValue(slot)) return slot;
+        }
+        return null;
+    }
+
+    private static Deque<Integer> getSlots(Map<Integer, Deque<Integer>> slotsByScore, Integer score) {
+        Deque<Integer> slots = slotsByScore.get(score);
+        if (slots == null) {
+            slots = new ArrayDeque<>();
+            slotsByScore.put(score, slots);
+        }
+        return slots;
+    }
+
+    private static String getSlotEntry(Integer slot) {
+        return SIDEBAR_ENTRIES[slot].toString() + ChatColor.RESET;
+    }
+
+    private void setLineText(Player bukkitPlayer, Integer slot, String line) {
+        int split = Math.min(line.length(), 16);
+        //A colour code can't be split between the two, so it moves into the suffix whole
+        if (line.length() > 16 && line.charAt(15) == ChatColor.COLOR_CHAR) split = 15;
+        String linePrefix = line.substring(0, split);
+        String lineSuffix = "";
+        if (line.length() > split) {
+            lineSuffix = ChatColor.getLastColors(linePrefix) + line.substring(split);
+            lineSuffix = lineSuffix.substring(0, Math.min(lineSuffix.length(), 16));
+        }
+        WrapperPlayServerScoreboardTeam packet = new WrapperPlayServerScoreboardTeam();
+        packet.setTeamName(SIDEBAR_TEAM_PREFIX + slot);
+        packet.setTeamDisplayName(SIDEBAR_TEAM_PREFIX + slot);
+        packet.setTeamPrefix(linePrefix);
+        packet.setTeamSuffix(lineSuffix);
+        packet.setFriendlyFire((byte) 0);
+        if (createdLineTeams.add(slot)) {
+            packet.setPacketMode((byte) WrapperPlayServerScoreboardTeam.Modes.TEAM_CREATED);
+            packet.setPlayers(Arrays.asList(getSlotEntry(slot)));
+        }
+        else packet.setPacketMode((byte) WrapperPlayServerScoreboardTeam.Modes.TEAM_UPDATED);
+        packet.sendPacket(bukkitPlayer);
+    }
+
+    private void setLineScore(Player bukkitPlayer, Integer slot, Integer score) {
+        createOrUpdateSidebarText(bukkitPlayer, getSlotEntry(slot), score);
+        sentScores.put(slot, score);
+    }
+
     private void createSidebarObjective() {
         WrapperPlayServerScoreboardObjective packet = new WrapperPlayServerScoreboardObjective();
         packet.setPacketMode((byte) WrapperPlayServerScoreboardObjective.Modes.ADD_OBJECTIVE);
         packet.setObjectiveName(SIDEBAR_OBJECTIVE);
         packet.setObjectiveValue(sideTitle);
+        sentTitle = sideTitle;
 
         WrapperPlayServerScoreboardDisplayObjective displayPacket = new WrapperPlayServerScoreboardDisplayObjective();
         displayPacket.setPosition((byte) WrapperPlayServerScoreboardDisplayObjective.Positions.SIDEBAR);
@@ -82,28 +220,28 @@ public final class ScoreboardAttachment {
         displayPacket.sendPacket(player.getBukkitPlayer());
     }
 
-    private void createOrUpdateSidebarText(String string, Integer integer) {
+    private void createOrUpdateSidebarText(Player bukkitPlayer, String string, Integer integer) {
         WrapperPlayServerScoreboardScore packet = new WrapperPlayServerScoreboardScore();
         packet.setScoreName(SIDEBAR_OBJECTIVE);
         packet.setPacketMode((byte) WrapperPlayServerScoreboardScore.Modes.SET_SCORE);
         packet.setItemName(string);
         packet.setValue(integer);
-        packet.sendPacket(player.getBukkitPlayer());
+        packet.sendPacket(bukkitPlayer);
     }
 
-    private void updateTitle() {
+    private void updateTitle(Player bukkitPlayer) {
         WrapperPlayServerScoreboardObjective packet = new WrapperPlayServerScoreboardObjective();
         packet.setPacketMode((byte) WrapperPlayServerScoreboardObjective.Modes.UPDATE_VALUE);
         packet.setObjectiveName(SIDEBAR_OBJECTIVE);
         packet.setObjectiveValue(sideTitle);
-        packet.sendPacket(player.getBukkitPlayer());
+        packet.sendPacket(bukkitPlayer);
     }
 
-    private void removeSidebarText(String key) {
+    private void removeSidebarEntry(Player bukkitPlayer, String key) {
         WrapperPlayServerScoreboardScore scorePacket = new WrapperPlayServerScoreboardScore();
         scorePacket.setPacketMode((byte) WrapperPlayServerScoreboardScore.Modes.REMOVE_SCORE);
         scorePacket.setItemName(key);
         scorePacket.setScoreName(SIDEBAR_OBJECTIVE);
-        scorePacket.sendPacket(player.getBukkitPlayer());
+        scorePacket.sendPacket(bukkitPlayer);
     }
 }
@@ -14,11 +14,21 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
 
 import java.net.InetAddress;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
+/**
+ * Manages the teams used to give players nametag prefixes and suffixes.
+ *
+ * There's one team for each prefix and suffix combination in use, found through an index on that pair. A team is only
+ * registered and sent to clients once its first player joins it, and it's removed as soon as its last member leaves, so
+ * a team nobody joined is never sent. Membership changes are sent as add and remove player packets.
+ */
 public final class ScoreboardManager implements Listener, CPlayerConnectionListener {
-    private List<ScoreboardTeam> scoreboardTeams = new ArrayList<>();
+    private final Map<String, ScoreboardTeam> teamsByKey = new HashMap<>();
+    /* Teams clients know about, by identity as a team's equality changes with its members */
+    private final Set<ScoreboardTeam> registeredTeams = Collections.newSetFromMap(new IdentityHashMap<ScoreboardTeam, Boolean>());
+    private final Map<CPlayer, ScoreboardTeam> playerTeams = new HashMap<>();
+    private int nextTeamId = 0;
 
     @Getter private static ScoreboardManager instance;
 
@@ -26,68 +36,89 @@ public final class ScoreboardManager implements Listener, CPlayerConnectionListe
         instance = this;
     }
 
-    private ScoreboardTeam createTeam(String name) {
-        ScoreboardTeam scoreboardTeam = new ScoreboardTeam(name, name);
-        this.scoreboardTeams.add(scoreboardTeam);
-        broadcastCreatePacket(scoreboardTeam);
-        return scoreboardTeam;
+    private ScoreboardTeam register(ScoreboardTeam team) {
+        //Another team with the same prefix and suffix may have been registered since this one was handed out
+        String key = getKey(team.getPrefix(), team.getSuffix());
+        ScoreboardTeam existingTeam = teamsByKey.get(key);
+        if (existingTeam != null) return existingTeam;
+        teamsByKey.put(key, team);
+        registeredTeams.add(team);
+        broadcastCreatePacket(team);
+        return team;
     }
 
     public void setPlayerTeam(CPlayer player, ScoreboardTeam team) {
         ScoreboardTeam playersTeam = getPlayersTeam(player);
-        if (playersTeam != null) playersTeam.removePlayer(player);
-        Core.logInfo("Setting a player team!");
+        if (team == playersTeam) return;
+        if (!registeredTeams.contains(team)) {
+            team = register(team);
+            if (team == playersTeam) return;
+        }
+        Core.logDebug("Setting a player team!");
+        if (playersTeam != null) {
+            playersTeam.removePlayer(player);
+            removeIfEmpty(playersTeam);
+        }
         team.addPlayer(player);
+        playerTeams.put(player, team);
     }
 
+    /**
+     * Gets the team for a prefix and suffix. If there isn't one yet, the team returned isn't registered or sent to
+     * anyone until a player is put in it with {@link #setPlayerTeam(CPlayer, ScoreboardTeam)}.
+     */
     public ScoreboardTeam getTeamForPrefixAndSuffix(String prefix, String suffix) {
-        for (ScoreboardTeam scoreboardTeam : scoreboardTeams) {
-            if (scoreboardTeam.getPrefix().equals(prefix) && scoreboardTeam.getSuffix().equals(suffix)) return scoreboardTeam;
-        }
-        ScoreboardTeam team = null;
-        do { //Ensure unique and generate a random name
-            float id = Math.round(Core.getRandom().nextFloat() * 1000);
-            String identifierName = String.format("%.0f", id);
-            boolean fail = false;
-            for (ScoreboardTeam scoreboardTeam : scoreboardTeams) {
-                if (scoreboardTeam.getName().equals(identifierName)) {
-                    fail = true;
-                    break;
-                }
-            }
-            if (fail) continue;
-            Core.logDebug("Creating a new team for prefix " + prefix + " and suffix " + suffix);
-            team = createTeam(identifierName);
-            Core.logDebug("Setting prefix of new team " + team.getName() + " to " + prefix);
-            team.setPrefix(prefix);
-            Core.logDebug("Setting suffix of new team " + team.getName() + " to " + suffix);
-            team.setSuffix(suffix);
-        } while (team == null);
-        return team;
+        ScoreboardTeam scoreboardTeam = teamsByKey.get(getKey(prefix, suffix));
+        if (scoreboardTeam != null) return scoreboardTeam;
+        String identifierName = String.valueOf(nextTeamId++);
+        Core.logDebug("Creating a new team " + identifierName + " for prefix " + prefix + " and suffix " + suffix);
+        scoreboardTeam = new ScoreboardTeam(identifierName, identifierName);
+        scoreboardTeam.setPrefixAndSuffix(prefix, suffix);
+        return scoreboardTeam;
     }
 
     public ScoreboardTeam getPlayersTeam(CPlayer player) {
-        for (ScoreboardTeam scoreboardTeam : scoreboardTeams) {
-            if (scoreboardTeam.getPlayers().contains(player)) return scoreboardTeam;
-        }
-        return null;
+        return playerTeams.get(player);
     }
 
     void broadcastPacket(AbstractPacket packet) {
         ProtocolLibrary.getProtocolManager().broadcastServerPacket(packet.getHandle());
     }
 
+    void onTeamChanged(ScoreboardTeam team, String oldPrefix, String oldSuffix) {
+        if (!registeredTeams.contains(team)) return; //Sent with its current prefix and suffix once it's registered
+        String oldKey = getKey(oldPrefix, oldSuffix);
+        if (teamsByKey.get(oldKey) == team) teamsByKey.remove(oldKey);
+        String newKey = getKey(team.getPrefix(), team.getSuffix());
+        if (!teamsByKey.containsKey(newKey)) teamsByKey.put(newKey, team);
+        broadcastPacket(team.getTeamPacket((byte) WrapperPlayServerScoreboardTeam.Modes.TEAM_UPDATED));
+    }
+
+    private void removeIfEmpty(ScoreboardTeam team) {
+        if (team.getPlayers().size() != 0) return;
+        String key = getKey(team.getPrefix(), team.getSuffix());
+        if (teamsByKey.get(key) == team) teamsByKey.remove(key);
+        registeredTeams.remove(team);
+        Core.logDebug("Removing empty team " + team.getName());
+        broadcastPacket(team.getTeamPacket((byte) WrapperPlayServerScoreboardTeam.Modes.TEAM_REMOVED));
+    }
+
+    private static String getKey(String prefix, String suffix) {
+        return prefix + '\u0000' + suffix;
+    }
+
     //Event handlers
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerJoin(PlayerJoinEvent event) {
-        for (ScoreboardTeam scoreboardTeam : scoreboardTeams) {
-            broadcastCreatePacket(scoreboardTeam);
+        //Only the joining player needs to learn about the existing teams
+        for (ScoreboardTeam scoreboardTeam : registeredTeams) {
+            scoreboardTeam.getCreatePacket().sendPacket(event.getPlayer());
         }
     }
 
     private void broadcastCreatePacket(ScoreboardTeam team) {
         Core.logDebug("Creating team " + team.getName());
-        team.getTeamPacket((byte) WrapperPlayServerScoreboardTeam.Modes.TEAM_CREATED);
+        broadcastPacket(team.getCreatePacket());
     }
 
     @Override
@@ -97,8 +128,9 @@ public final class ScoreboardManager implements Listener, CPlayerConnectionListe
 
     @Override
     public void onPlayerDisconnect(CPlayer player) {
-        for (ScoreboardTeam scoreboardTeam : scoreboardTeams) {
-            if (scoreboardTeam.getPlayers().contains(player)) scoreboardTeam.playerDisconnected(player);
-        }
+        ScoreboardTeam scoreboardTeam = playerTeams.remove(player);
+        if (scoreboardTeam == null) return;
+        scoreboardTeam.playerDisconnected(player);
+        removeIfEmpty(scoreboardTeam);
     }
 }
@@ -27,7 +27,7 @@ public final class ScoreboardTeam {
     void addPlayer(CPlayer player) {
         if (this.players.contains(player)) throw new IllegalArgumentException("You cannot add a player to this team because they are already a member of that team.");
         this.players.add(player);
-        Core.logInfo("Broadcasting an add player packet.");
+        Core.logDebug("Broadcasting an add player packet.");
         ScoreboardManager.getInstance().broadcastPacket(getTeamPacket((byte) WrapperPlayServerScoreboardTeam.Modes.PLAYERS_ADDED, Arrays.asList(player.getName())));
     }
 
@@ -38,13 +38,26 @@ public final class ScoreboardTeam {
     }
 
     public void setPrefix(String prefix) {
+        String oldPrefix = this.prefix;
         this.prefix = prefix;
-        ScoreboardManager.getInstance().broadcastPacket(getTeamPacket((byte) WrapperPlayServerScoreboardTeam.Modes.TEAM_UPDATED));
+        ScoreboardManager.getInstance().onTeamChanged(this, oldPrefix, suffix);
     }
 
     public void setSuffix(String suffix) {
+        String oldSuffix = this.suffix;
         this.suffix = suffix;
-        ScoreboardManager.getInstance().broadcastPacket(getTeamPacket((byte) WrapperPlayServerScoreboardTeam.Modes.TEAM_UPDATED));
+        ScoreboardManager.getInstance().onTeamChanged(this, prefix, oldSuffix);
+    }
+
+    void setPrefixAndSuffix(String prefix, String suffix) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    WrapperPlayServerScoreboardTeam getCreatePacket() {
+        List<String> names = new ArrayList<>(players.size());
+        for (CPlayer player : players) names.add(player.getName());
+        return getTeamPacket((byte) WrapperPlayServerScoreboardTeam.Modes.TEAM_CREATED, names);
     }
 
     WrapperPlayServerScoreboardTeam getTeamPacket(Byte mode, List<String> playerDelta) {
@@ -61,11 +74,11 @@ public final class ScoreboardTeam {
             case 3:
             case 4:
                 if (mode != 2) {
-                    Core.logInfo("Placing players for mode " + mode);
+                    Core.logDebug("Placing players for mode " + mode);
                     packet.setPlayers(playerDelta);
                 }
         }
-        Core.logInfo("Sending team packet for mode " + mode);
+        Core.logDebug("Sending team packet for mode " + mode);
         return packet;
     }
 
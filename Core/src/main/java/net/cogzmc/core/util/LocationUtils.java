@@ -39,4 +39,36 @@ public final class LocationUtils {
     public static String encodeLocationString(Location location) {
         return location.getWorld().getName() + LocationUtils.DIVIDER + location.getX() + LocationUtils.DIVIDER + location.getY() + LocationUtils.DIVIDER + location.getZ() + LocationUtils.DIVIDER + location.getPitch() + LocationUtils.DIVIDER + location.getYaw();
     }
+
+    /**
+     * Packs chunk coordinates into a single long, for use as a key when indexing things by chunk.
+     *
+     * @param chunkX The X coordinate of the chunk (block X shifted right by four).
+     * @param chunkZ The Z coordinate of the chunk (block Z shifted right by four).
+     * @return A key unique to that chunk within a world.
+     */
+    public static long getChunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets the key for the chunk containing the location, as described in {@link #getChunkKey(int, int)}.
+     *
+     * @param location The location to get the chunk key for.
+     * @return The key of the chunk the location is in.
+     */
+    public static long getChunkKey(Location location) {
+        return getChunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+    }
+
+    /**
+     * Checks if moving between two locations crosses a chunk border. Both locations are assumed to be in the same world.
+     *
+     * @param from The location being moved from.
+     * @param to The location being moved to.
+     * @return If the two locations are in different chunks.
+     */
+    public static boolean crossesChunk(Location from, Location to) {
+        return (from.getBlockX() >> 4) != (to.getBlockX() >> 4) || (from.getBlockZ() >> 4) != (to.getBlockZ() >> 4);
+    }
 }
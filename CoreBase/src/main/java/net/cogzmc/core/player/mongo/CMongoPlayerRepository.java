@@ -12,10 +12,7 @@ import net.cogzmc.core.player.DatabaseConnectException;
 import org.bson.types.ObjectId;
 
 import java.net.InetAddress;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 
 import static net.cogzmc.core.player.mongo.MongoUtils.getValueFrom;
 
@@ -59,9 +56,17 @@ public class CMongoPlayerRepository implements CPlayerRepository {
 
     @Override
     public List<COfflinePlayer> getOfflinePlayersByUUIDS(List<UUID> uuids) {
+        //One query for all of them, then put them back in the order they were asked for
+        List<String> uuidStrings = new ArrayList<>();
+        for (UUID uuid : uuids) uuidStrings.add(uuid.toString());
+        DBCursor dbObjects = database.getCollection(MongoKey.USERS_COLLETION.toString()).find(new BasicDBObject(MongoKey.UUID_KEY.toString(), new BasicDBObject("$in", uuidStrings)));
+        Map<UUID, DBObject> documents = new HashMap<>();
+        for (DBObject dbObject : dbObjects) {
+            documents.put(UUID.fromString(getValueFrom(dbObject, MongoKey.UUID_KEY.toString(), String.class)), dbObject);
+        }
         List<COfflinePlayer> offlinePlayers = new ArrayList<>();
         for (UUID uuid : uuids) {
-            DBObject playerDocumentFor = getPlayerDocumentFor(uuid);
+            DBObject playerDocumentFor = documents.get(uuid);
             if (playerDocumentFor == null) continue; //If this UUID is invalid, this method will not return the player.
             //TODO actually, this is just here to mark this as a point of interest. Should we create new players we can't find a match for or should we ignore them?
             /*
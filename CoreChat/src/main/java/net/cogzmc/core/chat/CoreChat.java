@@ -17,6 +17,8 @@ import net.cogzmc.core.player.CPlayerConnectionListener;
 public final class CoreChat extends ModularPlugin {
     @Getter private static CoreChat instance;
     @Getter private IChannelManager channelManager;
+    @Getter private ChatPipeline chatPipeline;
+    @Getter private ChatRelay chatRelay;
 
     public final static String COLOR_CHAT_PERMISSION = "core.chat.color";
 
@@ -42,9 +44,20 @@ public final class CoreChat extends ModularPlugin {
         instance = this;
         this.channelManager = new ConfigurationChannelManager(); //THROWS CAUGHT
         getPlayerManager().registerCPlayerConnectionListener((CPlayerConnectionListener) this.channelManager);
-        registerListener(new ChatterListener(this.channelManager));
-        if (Core.getNetworkManager() != null) Core.getNetworkManager().registerNetCommandHandler(new ChannelNetCommandHandler(), ChatNetCommand.class);
+        this.chatPipeline = new ChatPipeline(this.channelManager);
+        registerListener(new ChatterListener(this.channelManager, this.chatPipeline));
+        this.chatRelay = new ChatRelay();
+        if (Core.getNetworkManager() != null) {
+            Core.getNetworkManager().registerNetCommandHandler(new ChannelNetCommandHandler(), ChatNetCommand.class);
+            Core.getNetworkManager().registerNetCommandHandler(new BatchedChatNetCommandHandler(), BatchedChatNetCommand.class);
+        }
         registerCommand(new ChannelCommand());
         registerCommand(new PrivateMessageCommand());
     }
+
+    @Override
+    protected void onModuleDisable() throws Exception {
+        if (this.chatPipeline != null) this.chatPipeline.shutdown();
+        if (this.chatRelay != null) this.chatRelay.shutdown(); //After the pipeline, which may still be queueing messages
+    }
 }
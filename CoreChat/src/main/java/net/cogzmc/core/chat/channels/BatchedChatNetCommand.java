@@ -0,0 +1,22 @@
+package net.cogzmc.core.chat.channels;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import net.cogzmc.core.network.NetCommand;
+import net.cogzmc.core.network.NetCommandField;
+
+import java.util.List;
+
+/**
+ * Every cross server message sent on one channel during a {@link net.cogzmc.core.chat.channels.ChatRelay} window, in
+ * the order they were sent. {@code senderUUIDs} and {@code messages} line up by index.
+ */
+@AllArgsConstructor
+@Data
+public class BatchedChatNetCommand implements NetCommand {
+    public BatchedChatNetCommand() {
+    }
+    @NetCommandField private String channel;
+    @NetCommandField private List<String> senderUUIDs;
+    @NetCommandField private List<String> messages;
+}
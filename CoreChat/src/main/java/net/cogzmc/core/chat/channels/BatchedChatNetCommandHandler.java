@@ -0,0 +1,39 @@
+package net.cogzmc.core.chat.channels;
+
+import net.cogzmc.core.Core;
+import net.cogzmc.core.chat.CoreChat;
+import net.cogzmc.core.network.NetCommandHandler;
+import net.cogzmc.core.network.NetworkServer;
+import net.cogzmc.core.player.COfflinePlayer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class BatchedChatNetCommandHandler implements NetCommandHandler<BatchedChatNetCommand> {
+    @Override
+    public void handleNetCommand(NetworkServer sender, BatchedChatNetCommand netCommand) {
+        Channel channelByName = CoreChat.getInstance().getChannelManager().getChannelByName(netCommand.getChannel());
+        List<String> senderUUIDs = netCommand.getSenderUUIDs();
+        List<String> messages = netCommand.getMessages();
+        if (channelByName == null || senderUUIDs == null || messages == null) return;
+        //The same few people tend to do most of the talking in a window, so only look each of them up once
+        Map<String, COfflinePlayer> senders = new HashMap<>();
+        for (int x = 0; x < Math.min(senderUUIDs.size(), messages.size()); x++) {
+            String senderUUID = senderUUIDs.get(x);
+            COfflinePlayer offlinePlayer;
+            if (senders.containsKey(senderUUID)) offlinePlayer = senders.get(senderUUID);
+            else {
+                offlinePlayer = Core.getOfflinePlayerByUUID(UUID.fromString(senderUUID));
+                senders.put(senderUUID, offlinePlayer);
+            }
+            if (offlinePlayer == null) continue;
+            try {
+                ChatterListener.sendMessage(offlinePlayer, messages.get(x), channelByName);
+            } catch (ChannelException e) {
+                Core.getInstance().getLogger().severe("Unable to handle cross server message from " + sender.getName() + " on channel " + netCommand.getChannel());
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package net.cogzmc.core.chat.channels;
+
+import net.cogzmc.core.Core;
+import net.cogzmc.core.chat.CoreChat;
+import net.cogzmc.core.player.CPlayer;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+
+/**
+ * Formats and delivers chat messages off of the thread that received them.
+ *
+ * Messages are spread over a few single threaded lanes by sender, so one sender's messages are always handled in the
+ * order they were sent, while a slow message from one sender doesn't hold up everyone else. Each lane has a bounded
+ * queue; when it fills up, the message is refused and the sender is told to slow down, instead of the queue growing
+ * without limit during a chat burst.
+ */
+public final class ChatPipeline {
+    private final static int QUEUE_CAPACITY_PER_LANE = 256;
+    /* Used when the formats file has no chat-busy message, such as one written before the message was added */
+    private final static String CHAT_BUSY_FALLBACK = ChatColor.RED + "Chat is busy right now, please wait a moment before sending another message.";
+
+    private final IChannelManager channelManager;
+    private final ThreadPoolExecutor[] lanes;
+
+    public ChatPipeline(IChannelManager channelManager) {
+        this.channelManager = channelManager;
+        int laneCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        this.lanes = new ThreadPoolExecutor[laneCount];
+        for (int x = 0; x < laneCount; x++) {
+            final String threadName = "Core Chat Pipeline #" + (x + 1);
+            lanes[x] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY_PER_LANE), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    /**
+     * Queues a chat message to be formatted and sent to the recipients on the sender's lane.
+     *
+     * @param sender The {@link net.cogzmc.core.player.CPlayer} who sent the message.
+     * @param channel The {@link net.cogzmc.core.chat.channels.Channel} the message was sent on.
+     * @param message The raw message.
+     * @param recipients The players who should see the message. This should be a copy, as it is read later on another thread.
+     * @return If the message was accepted. When it's not, the sender has already been told.
+     */
+    public boolean submitChat(final CPlayer sender, final Channel channel, final String message, final Collection<Player> recipients) {
+        return submit(sender, new Runnable() {
+            @Override
+            public void run() {
+                String formattedMessage = channel.formatMessage(sender, message);
+                for (Player player : recipients) {
+                    if (player.isOnline()) player.sendMessage(formattedMessage);
+                }
+                for (ChatterObserver chatterObserver : channelManager.getChatterObservers()) {
+                    chatterObserver.onMessageSent(sender, channel, formattedMessage);
+                }
+                Bukkit.getServer().getConsoleSender().sendMessage(formattedMessage);
+                ChatterListener.attemptCrossServer(sender, formattedMessage, channel);
+            }
+        });
+    }
+
+    /**
+     * Queues a message to be sent to the other servers on a cross server channel, on the sender's lane.
+     *
+     * @param sender The {@link net.cogzmc.core.player.CPlayer} who sent the message.
+     * @param channel The {@link net.cogzmc.core.chat.channels.Channel} the message was sent on.
+     * @param message The message to send.
+     * @return If the message was accepted. When it's not, the sender has already been told.
+     */
+    public boolean submitCrossServer(final CPlayer sender, final Channel channel, final String message) {
+        return submit(sender, new Runnable() {
+            @Override
+            public void run() {
+                ChatterListener.attemptCrossServer(sender, message, channel);
+            }
+        });
+    }
+
+    /**
+     * Stops accepting messages, and waits a moment for the queued ones to be handled.
+     */
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : lanes) lane.shutdown();
+        for (ThreadPoolExecutor lane : lanes) {
+            try {
+                if (!lane.awaitTermination(1, TimeUnit.SECONDS)) lane.shutdownNow();
+            } catch (InterruptedException e) {
+                lane.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean submit(CPlayer sender, final Runnable task) {
+        ThreadPoolExecutor lane = lanes[(sender.getUniqueIdentifier().hashCode() & Integer.MAX_VALUE) % lanes.length];
+        try {
+            lane.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        Core.getInstance().getLogger().log(Level.SEVERE, "Could not handle a chat message", e);
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            CoreChat coreChat = CoreChat.getInstance();
+            sender.sendMessage(coreChat.hasFormat("chat-busy") ? coreChat.getFormat("chat-busy") : CHAT_BUSY_FALLBACK);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package net.cogzmc.core.chat.channels;
+
+import net.cogzmc.core.Core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Collects outgoing cross server messages per channel, and sends everything from a short window as one
+ * {@link net.cogzmc.core.chat.channels.BatchedChatNetCommand}.
+ *
+ * A window opens with the first message on a channel and is sent {@link #WINDOW_MILLIS} later, or straight away once
+ * it holds {@link #MAX_BATCH_SIZE} messages, so no message waits longer than one window. Batches are sent from a
+ * single thread, in the order their messages were queued.
+ */
+public final class ChatRelay {
+    private final static long WINDOW_MILLIS = 50;
+    private final static int MAX_BATCH_SIZE = 100;
+
+    private final Map<String, PendingBatch> pendingBatches = new HashMap<>();
+    private final ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Core Chat Relay");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final class PendingBatch {
+        private final List<String> senderUUIDs = new ArrayList<>();
+        private final List<String> messages = new ArrayList<>();
+    }
+
+    /**
+     * Queues a message to be sent to the other servers with the rest of this window.
+     * @param channelName The name of the channel the message was sent on.
+     * @param senderUUID The UUID of the sender, as a string.
+     * @param message The formatted message.
+     */
+    public void queue(final String channelName, String senderUUID, String message) {
+        synchronized (pendingBatches) {
+            PendingBatch batch = pendingBatches.get(channelName);
+            if (batch == null) {
+                batch = new PendingBatch();
+                pendingBatches.put(channelName, batch);
+                final PendingBatch windowBatch = batch;
+                sender.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush(channelName, windowBatch);
+                    }
+                }, WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            batch.senderUUIDs.add(senderUUID);
+            batch.messages.add(message);
+            if (batch.messages.size() < MAX_BATCH_SIZE) return;
+            //Full, so close this window now. The task scheduled for it will find it already sent.
+            pendingBatches.remove(channelName);
+            final PendingBatch fullBatch = batch;
+            sender.execute(new Runnable() {
+                @Override
+                public void run() {
+                    send(channelName, fullBatch);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops the relay, after sending whatever is still waiting.
+     */
+    public void shutdown() {
+        sender.shutdown(); //Windows that are already open still get sent
+        try {
+            sender.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush(String channelName, PendingBatch batch) {
+        synchronized (pendingBatches) {
+            //Only if this window is still open, otherwise it was sent when it filled up
+            if (pendingBatches.get(channelName) != batch) return;
+            pendingBatches.remove(channelName);
+        }
+        send(channelName, batch);
+    }
+
+    private static void send(String channelName, PendingBatch batch) {
+        if (Core.getNetworkManager() == null) return;
+        try {
+            Core.getNetworkManager().sendMassNetCommand(new BatchedChatNetCommand(channelName, batch.senderUUIDs, batch.messages));
+        } catch (Exception e) {
+            Core.getInstance().getLogger().log(Level.SEVERE, "Could not relay " + batch.messages.size() + " chat messages on " + channelName, e);
+        }
+    }
+}
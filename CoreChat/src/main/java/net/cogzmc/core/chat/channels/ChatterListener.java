@@ -13,22 +13,23 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
 
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Set;
 
 @Data
 public final class ChatterListener implements Listener {
     private final IChannelManager channelManager;
+    private final ChatPipeline chatPipeline;
 
     @EventHandler(priority = EventPriority.LOW, ignoreCancelled = true)
     public void onPlayerChat(AsyncPlayerChatEvent event) {
         CPlayer player = Core.getOnlinePlayer(event.getPlayer());
         Channel activeChannel = channelManager.getChannelPlayerParticipatingIn(player);
-        List<Player> recipients = new ArrayList<>();
-        for (CPlayer cPlayer : channelManager.getListeners(activeChannel)) {
-            recipients.add(cPlayer.getBukkitPlayer());
+        Set<Player> recipients = event.getRecipients();
+        recipients.clear();
+        for (CPlayer cPlayer : channelManager.getListenersView(activeChannel)) {
+            Player bukkitPlayer = cPlayer.getBukkitPlayer();
+            if (bukkitPlayer != null) recipients.add(bukkitPlayer);
         }
-        event.getRecipients().removeAll(event.getRecipients());
-        event.getRecipients().addAll(recipients);
     }
 
     @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
@@ -36,18 +37,8 @@ public final class ChatterListener implements Listener {
         event.setCancelled(true);
         CPlayer sender = Core.getOnlinePlayer(event.getPlayer());
         Channel channel = channelManager.getChannelPlayerParticipatingIn(sender);
-        String message = channel.formatMessage(sender, event.getMessage());
-        for (Player player : event.getRecipients()) {
-            player.sendMessage(message);
-        }
-        for (ChatterObserver chatterObserver : channelManager.getChatterObservers()) {
-            chatterObserver.onMessageSent(sender, channel, message);
-        }
-        Bukkit.getServer().getConsoleSender().sendMessage(message);
-        try {
-            attemptCrossServer(sender, message, channel);
-        } catch (ChannelException ignored) {
-        }
+        //Formatting, delivery and the cross server send all happen on the pipeline, so this thread is free right away
+        chatPipeline.submitChat(sender, channel, event.getMessage(), new ArrayList<>(event.getRecipients()));
     }
 
     public static void sendMessageOnChannel(CPlayer sender, String message, Channel channel) throws ChannelException {
@@ -55,19 +46,18 @@ public final class ChatterListener implements Listener {
         if (!cManager.isListening(sender, channel)
                 || !channel.canBecomeParticipant(sender))
             throw new ChannelException("You cannot chat in this channel");
-        attemptCrossServer(sender, message, channel);
+        CoreChat.getInstance().getChatPipeline().submitCrossServer(sender, channel, message);
     }
 
-    private static void attemptCrossServer(CPlayer player, String message, Channel channel) throws ChannelException {
+    static void attemptCrossServer(CPlayer player, String message, Channel channel) {
         if (!channel.isCrossServer() || Core.getNetworkManager() == null) return;
-        ChatNetCommand chatNetCommand = new ChatNetCommand(message, channel.getName(), player.getUniqueIdentifier().toString());
-        Core.getNetworkManager().sendMassNetCommand(chatNetCommand);
+        CoreChat.getInstance().getChatRelay().queue(channel.getName(), player.getUniqueIdentifier().toString(), message);
     }
 
     static void sendMessage(COfflinePlayer sender, String message, Channel channel) throws ChannelException {
         IChannelManager cManager = CoreChat.getInstance().getChannelManager();
         String s = channel.formatMessage(sender, message);
-        for (CPlayer cPlayer : cManager.getListeners(channel)) {
+        for (CPlayer cPlayer : cManager.getListenersView(channel)) {
             cPlayer.sendMessage(s);
         }
         Bukkit.getServer().getConsoleSender().sendMessage(message);
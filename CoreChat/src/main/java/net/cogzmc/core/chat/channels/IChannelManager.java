@@ -3,6 +3,8 @@ package net.cogzmc.core.chat.channels;
 import com.google.common.collect.ImmutableList;
 import net.cogzmc.core.player.CPlayer;
 
+import java.util.Set;
+
 public interface IChannelManager {
     ImmutableList<Channel> getChannels();
     Channel getChannelByName(String name);
@@ -13,6 +15,22 @@ public interface IChannelManager {
     Channel getChannelPlayerParticipatingIn(CPlayer player);
     ImmutableList<CPlayer> getParticipants(Channel channel);
     ImmutableList<CPlayer> getListeners(Channel channel);
+
+    /**
+     * Gets a live, read-only view of the players participating in a channel. This is kept up to date by the manager
+     * rather than built on every call, so prefer it over {@link #getParticipants(Channel)} on hot paths.
+     * @param channel The channel to get the participants of.
+     * @return A read-only view of the channel's participants.
+     */
+    Set<CPlayer> getParticipantsView(Channel channel);
+
+    /**
+     * Gets a live, read-only view of the players listening to a channel. This is kept up to date by the manager
+     * rather than built on every call, so prefer it over {@link #getListeners(Channel)} on hot paths.
+     * @param channel The channel to get the listeners of.
+     * @return A read-only view of the channel's listeners.
+     */
+    Set<CPlayer> getListenersView(Channel channel);
     Channel getDefaultChannel();
     void reload() throws ChannelException;
     void save();
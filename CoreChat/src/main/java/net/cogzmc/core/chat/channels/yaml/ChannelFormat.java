@@ -0,0 +1,65 @@
+package net.cogzmc.core.chat.channels.yaml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A channel's format string, split once into literal text and {@code {$variable}} slots.
+ *
+ * Rendering is a single pass over a {@link StringBuilder}. Unlike {@link org.apache.commons.lang.text.StrSubstitutor},
+ * values are inserted as they are and never substituted again, so a chat message containing {@code {$prefix}} stays as
+ * typed. Unknown variables are left in place, as they were before.
+ */
+final class ChannelFormat {
+    private final static String VARIABLE_START = "{$";
+    private final static String VARIABLE_END = "}";
+
+    /* Alternating literal text and variable names, starting with (possibly empty) literal text */
+    private final String[] parts;
+    private final int literalLength;
+
+    ChannelFormat(String format) {
+        List<String> parts = new ArrayList<>();
+        int index = 0, literalLength = 0;
+        StringBuilder literal = new StringBuilder();
+        while (true) {
+            int start = format.indexOf(VARIABLE_START, index);
+            int end = start == -1 ? -1 : format.indexOf(VARIABLE_END, start + VARIABLE_START.length());
+            if (end == -1) {
+                literal.append(format.substring(index));
+                break;
+            }
+            literal.append(format, index, start);
+            parts.add(literal.toString());
+            literalLength += literal.length();
+            literal.setLength(0);
+            parts.add(format.substring(start + VARIABLE_START.length(), end));
+            index = end + VARIABLE_END.length();
+        }
+        parts.add(literal.toString());
+        literalLength += literal.length();
+        this.parts = parts.toArray(new String[parts.size()]);
+        this.literalLength = literalLength;
+    }
+
+    String render(Variables variables) {
+        StringBuilder builder = new StringBuilder(literalLength + 64);
+        for (int x = 0; x < parts.length; x++) {
+            if (x % 2 == 0) {
+                builder.append(parts[x]);
+                continue;
+            }
+            String value = variables.get(parts[x]);
+            if (value == null) builder.append(VARIABLE_START).append(parts[x]).append(VARIABLE_END);
+            else builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Supplies values for the variables in a format.
+     */
+    interface Variables {
+        String get(String name);
+    }
+}
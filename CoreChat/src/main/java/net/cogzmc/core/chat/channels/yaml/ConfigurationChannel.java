@@ -8,11 +8,11 @@ import net.cogzmc.core.chat.channels.MessageArgumentDelegate;
 import net.cogzmc.core.chat.channels.MessageProcessor;
 import net.cogzmc.core.player.COfflinePlayer;
 import net.cogzmc.core.player.CPlayer;
-import org.apache.commons.lang.text.StrSubstitutor;
 import org.bukkit.ChatColor;
 import org.bukkit.configuration.file.FileConfiguration;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public final class ConfigurationChannel implements Channel {
@@ -33,7 +33,7 @@ public final class ConfigurationChannel implements Channel {
         }
     }
 
-    private final String formatString;
+    private final ChannelFormat format;
     @Getter private final String name;
     private final boolean defaultChannel;
     @Getter private final boolean autoParticipate;
@@ -44,7 +44,7 @@ public final class ConfigurationChannel implements Channel {
     public ConfigurationChannel(FileConfiguration yamlFile, ConfigurationChannelManager channelManager) throws ChannelException {
         this.name = yamlFile.getString(ConfigKeys.NAME.toString());
         this.defaultChannel = yamlFile.getBoolean(ConfigKeys.DEFAULT.toString(), false);
-        this.formatString = ChatColor.translateAlternateColorCodes('&', yamlFile.getString(ConfigKeys.FORMAT.toString()));
+        this.format = new ChannelFormat(ChatColor.translateAlternateColorCodes('&', yamlFile.getString(ConfigKeys.FORMAT.toString())));
         this.autoParticipate = yamlFile.getBoolean(ConfigKeys.AUTO_PARTICIPATE.toString(), false);
         this.autoListen = yamlFile.getBoolean(ConfigKeys.AUTO_LISTEN.toString(), false);
         this.crossServer = yamlFile.getBoolean(ConfigKeys.CROSS_SERVER.toString(), false);
@@ -52,7 +52,7 @@ public final class ConfigurationChannel implements Channel {
     }
     @Override
     public String formatMessage(COfflinePlayer sender, String chatMessage) {
-        return StrSubstitutor.replace(formatString, getSirSubstituteMap(sender, chatMessage), "{$", "}");
+        return format.render(getVariables(sender, chatMessage));
     }
 
     @Override
@@ -75,27 +75,41 @@ public final class ConfigurationChannel implements Channel {
         return player.hasPermission(CoreChat.getChannelLeavePermission(this));
     }
 
-    private Map<String, String> getSirSubstituteMap(COfflinePlayer player, String message) {
-        HashMap<String, String> values = new HashMap<>();
+    private ChannelFormat.Variables getVariables(final COfflinePlayer player, String message) {
         for (MessageProcessor messageProcessor : this.channelManager.getMessageProcessors()) {
             message = messageProcessor.processChatMessage(player, message);
         }
-        values.put("sender-actual", player.getName());
-        values.put("sender-display", player.getDisplayName());
-        String prefix = player.getChatPrefix() == null ? player.getPrimaryGroup() == null ? "" : player.getPrimaryGroup().getChatPrefix() : player.getChatPrefix();
-        String suffix = player.getChatSuffix() == null ? player.getPrimaryGroup() == null ? "" : player.getPrimaryGroup().getChatSuffix() : player.getChatSuffix();
-        String nameColor = player.getChatColor() == null ? player.getPrimaryGroup() == null ? "" : player.getPrimaryGroup().getChatColor() : player.getChatColor();
-        values.put("prefix", ChatColor.translateAlternateColorCodes('&',prefix));
-        values.put("suffix", ChatColor.translateAlternateColorCodes('&',suffix));
-        values.put("name-color", ChatColor.translateAlternateColorCodes('&',nameColor));
-        values.put("message", player.hasPermission(CoreChat.COLOR_CHAT_PERMISSION) ? ChatColor.translateAlternateColorCodes('&', message) : message);
-        values.put("channel-name", name);
-        for (MessageArgumentDelegate messageArgumentDelegate : this.channelManager.getMessageArgumentDelegates()) {
-            for (Map.Entry<String, String> stringStringEntry : messageArgumentDelegate.getArgumentsFor(player, message).entrySet()) {
-                values.put(stringStringEntry.getKey(), stringStringEntry.getValue());
-            }
+        final SenderValues senderValues = this.channelManager.getSenderValues(player);
+        final String finalMessage = player.hasPermission(CoreChat.COLOR_CHAT_PERMISSION) ? ChatColor.translateAlternateColorCodes('&', message) : message;
+        //Delegates can override any of the built in variables, so they're only consulted (and a map built) if there are any
+        List<MessageArgumentDelegate> delegates = this.channelManager.getMessageArgumentDelegates();
+        final Map<String, String> delegateValues = delegates.size() == 0 ? null : new HashMap<String, String>();
+        for (MessageArgumentDelegate messageArgumentDelegate : delegates) {
+            delegateValues.putAll(messageArgumentDelegate.getArgumentsFor(player, message));
         }
-        return values;
+        return new ChannelFormat.Variables() {
+            @Override
+            public String get(String variable) {
+                if (delegateValues != null && delegateValues.containsKey(variable)) return delegateValues.get(variable);
+                switch (variable) {
+                    case "sender-actual":
+                        return player.getName();
+                    case "sender-display":
+                        return player.getDisplayName();
+                    case "prefix":
+                        return senderValues.prefix;
+                    case "suffix":
+                        return senderValues.suffix;
+                    case "name-color":
+                        return senderValues.nameColor;
+                    case "message":
+                        return finalMessage;
+                    case "channel-name":
+                        return name;
+                }
+                return null;
+            }
+        };
     }
 
     @Override
@@ -6,32 +6,75 @@ import lombok.NonNull;
 import net.cogzmc.core.Core;
 import net.cogzmc.core.chat.CoreChat;
 import net.cogzmc.core.chat.channels.*;
+import net.cogzmc.core.player.COfflinePlayer;
 import net.cogzmc.core.player.CPlayer;
 import net.cogzmc.core.player.CPlayerConnectionListener;
 import net.cogzmc.core.player.CPlayerJoinException;
+import net.cogzmc.core.player.mongo.CMongoPermissionsManager;
+import net.cogzmc.core.player.mongo.GroupReloadObserver;
 
 import java.net.InetAddress;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
-public final class ConfigurationChannelManager implements IChannelManager, CPlayerConnectionListener {
+public final class ConfigurationChannelManager implements IChannelManager, CPlayerConnectionListener, GroupReloadObserver {
     private final ConfigurationChannelSource configurationChannelSource;
 
     private final List<ChannelManagerReloadObserver> channelManagerReloadObservers = new ArrayList<>();
 
     private Map<String, Channel> channels;
     @Getter private Channel defaultChannel;
-    private Map<Channel, List<CPlayer>> listenerMap;
+    /* Listeners and participants of every channel, kept up to date on join, quit, channel switches and permission reloads */
+    private Map<Channel, Set<CPlayer>> listenerMap;
+    private Map<Channel, Set<CPlayer>> participantMap;
     private Map<CPlayer, Channel> activeChannels;
     private List<MessageArgumentDelegate> messageArgumentDelegates;
     private List<MessageProcessor> messageProcessors;
     private List<ChatterObserver> chatterObservers;
+    /* Cached sender prefixes, suffixes and name colours, cleared when permissions reload */
+    private final Map<UUID, SenderValues> senderValues = new ConcurrentHashMap<>();
 
     public ConfigurationChannelManager() throws ChannelException {
         this.configurationChannelSource = new ConfigurationChannelSource(this);
         reload();
+        Core.getPermissionsManager().registerObserver(this);
+    }
+
+    SenderValues getSenderValues(COfflinePlayer player) {
+        SenderValues values = senderValues.get(player.getUniqueIdentifier());
+        if (values != null) return values;
+        values = SenderValues.of(player);
+        senderValues.put(player.getUniqueIdentifier(), values);
+        return values;
+    }
+
+    @Override
+    public void onReloadPermissions(CMongoPermissionsManager manager) {
+        senderValues.clear();
+        //Drop anyone who lost the permission to be in a channel they're in
+        for (Channel channel : channels.values()) {
+            if (channel.equals(defaultChannel)) continue;
+            for (CPlayer player : participantMap.get(channel)) {
+                if (channel.canBecomeParticipant(player)) continue;
+                setParticipating(player, defaultChannel);
+            }
+            for (CPlayer player : listenerMap.get(channel)) {
+                if (!channel.canBecomeListener(player) && !isParticipating(player, channel)) listenerMap.get(channel).remove(player);
+            }
+        }
+    }
+
+    private void setParticipating(CPlayer player, Channel channel) {
+        Channel oldChannel = getChannelPlayerParticipatingIn(player);
+        participantMap.get(oldChannel).remove(player);
+        if (!channel.equals(defaultChannel)) activeChannels.put(player, channel);
+        else activeChannels.remove(player);
+        participantMap.get(channel).add(player);
+    }
+
+    private static Set<CPlayer> newPlayerSet() {
+        //Read from the async chat thread, while the main thread changes them
+        return Collections.newSetFromMap(new ConcurrentHashMap<CPlayer, Boolean>());
     }
 
     @Override
@@ -51,8 +94,7 @@ public final class ConfigurationChannelManager implements IChannelManager, CPlay
         if (!isListening(player, channel)) makePlayerListener(player, channel);
         Channel oldChannel = getChannelPlayerParticipatingIn(player);
         if (!oldChannel.canRemoveParticipant(player)) throw new ChannelException("You cannot leave this channel!");
-        if (!channel.equals(defaultChannel)) activeChannels.put(player, channel);
-        else activeChannels.remove(player);
+        setParticipating(player, channel);
     }
 
     @Override
@@ -77,29 +119,39 @@ public final class ConfigurationChannelManager implements IChannelManager, CPlay
 
     @Override
     public ImmutableList<CPlayer> getParticipants(@NonNull Channel channel) {
-        List<CPlayer> players = new ArrayList<>();
-        for (Map.Entry<CPlayer, Channel> cPlayerChannelEntry : this.activeChannels.entrySet()) {
-            if (cPlayerChannelEntry.getValue().equals(channel)) players.add(cPlayerChannelEntry.getKey());
-        }
-        return ImmutableList.copyOf(players);
+        return ImmutableList.copyOf(getParticipantsView(channel));
     }
 
     @Override
     public ImmutableList<CPlayer> getListeners(@NonNull Channel channel) {
-        if (channel.equals(defaultChannel)) return ImmutableList.copyOf(Core.getOnlinePlayers());
-        return ImmutableList.copyOf(this.listenerMap.get(channel));
+        return ImmutableList.copyOf(getListenersView(channel));
+    }
+
+    @Override
+    public Set<CPlayer> getParticipantsView(@NonNull Channel channel) {
+        return Collections.unmodifiableSet(this.participantMap.get(channel));
+    }
+
+    @Override
+    public Set<CPlayer> getListenersView(@NonNull Channel channel) {
+        return Collections.unmodifiableSet(this.listenerMap.get(channel));
     }
 
     @Override
     public void reload() throws ChannelException {
-        this.listenerMap = new HashMap<>(); //Setup the listener map
+        this.listenerMap = new ConcurrentHashMap<>(); //Setup the listener map
+        this.participantMap = new ConcurrentHashMap<>(); //and participant map
         this.channels = new HashMap<>(); //Channel map
         for (Channel channel : this.configurationChannelSource.getNewChannels()) { //Load the channels from config
             registerChannel(channel); //by registering each one ^
             if (channel.isMarkedAsDefault()) this.defaultChannel = channel; //And setting the default up
         }
         if (defaultChannel == null) throw new IllegalStateException("There is no default channel!"); //And moaning if we can't get a default channel
-        this.activeChannels = new HashMap<>();  //Create an activeChannels map
+        this.activeChannels = new ConcurrentHashMap<>();  //Create an activeChannels map
+        for (CPlayer player : Core.getOnlinePlayers()) { //Everyone online is back in the default channel
+            listenerMap.get(defaultChannel).add(player);
+            participantMap.get(defaultChannel).add(player);
+        }
         this.messageArgumentDelegates = new ArrayList<>(); //and the delegates/
         this.messageProcessors = new ArrayList<>();//processors map
         this.chatterObservers = new ArrayList<>();
@@ -117,7 +169,8 @@ public final class ConfigurationChannelManager implements IChannelManager, CPlay
     public void registerChannel(@NonNull Channel channel) {
         if (this.channels.containsValue(channel)) throw new IllegalStateException("You cannot register the same channel twice!");
         this.channels.put(channel.getName(), channel);
-        this.listenerMap.put(channel, new ArrayList<CPlayer>());
+        this.listenerMap.put(channel, newPlayerSet());
+        this.participantMap.put(channel, newPlayerSet());
     }
 
     @Override
@@ -191,6 +244,8 @@ public final class ConfigurationChannelManager implements IChannelManager, CPlay
 
     @Override
     public void onPlayerLogin(CPlayer player, InetAddress address) throws CPlayerJoinException {
+        listenerMap.get(defaultChannel).add(player);
+        participantMap.get(defaultChannel).add(player);
         for (Channel channel : channels.values()) {
             /*
              * this is messy, have a close look
@@ -219,5 +274,9 @@ public final class ConfigurationChannelManager implements IChannelManager, CPlay
 
     @Override
     public void onPlayerDisconnect(CPlayer player) {
+        senderValues.remove(player.getUniqueIdentifier());
+        activeChannels.remove(player);
+        for (Set<CPlayer> listeners : listenerMap.values()) listeners.remove(player);
+        for (Set<CPlayer> participants : participantMap.values()) participants.remove(player);
     }
 }
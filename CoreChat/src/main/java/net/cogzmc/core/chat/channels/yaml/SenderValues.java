@@ -0,0 +1,35 @@
+package net.cogzmc.core.chat.channels.yaml;
+
+import net.cogzmc.core.player.CGroup;
+import net.cogzmc.core.player.COfflinePlayer;
+import org.bukkit.ChatColor;
+
+/**
+ * The colour-translated prefix, suffix and name colour of a chat sender.
+ *
+ * These are cached by the {@link net.cogzmc.core.chat.channels.yaml.ConfigurationChannelManager} until permissions
+ * reload, which also happens every time players are saved, so a changed prefix, suffix or group shows up by then.
+ */
+final class SenderValues {
+    final String prefix;
+    final String suffix;
+    final String nameColor;
+
+    private SenderValues(String prefix, String suffix, String nameColor) {
+        this.prefix = translate(prefix);
+        this.suffix = translate(suffix);
+        this.nameColor = translate(nameColor);
+    }
+
+    static SenderValues of(COfflinePlayer player) {
+        CGroup group = player.getPrimaryGroup();
+        String prefix = player.getChatPrefix() == null ? group == null ? "" : group.getChatPrefix() : player.getChatPrefix();
+        String suffix = player.getChatSuffix() == null ? group == null ? "" : group.getChatSuffix() : player.getChatSuffix();
+        String nameColor = player.getChatColor() == null ? group == null ? "" : group.getChatColor() : player.getChatColor();
+        return new SenderValues(prefix, suffix, nameColor);
+    }
+
+    private static String translate(String raw) {
+        return raw == null ? "" : ChatColor.translateAlternateColorCodes('&', raw);
+    }
+}
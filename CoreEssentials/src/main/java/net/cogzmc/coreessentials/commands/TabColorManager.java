@@ -4,29 +4,91 @@ import net.cogzmc.core.Core;
 import net.cogzmc.core.player.CPlayer;
 import net.cogzmc.core.player.mongo.CMongoPermissionsManager;
 import net.cogzmc.core.player.mongo.GroupReloadObserver;
+import net.cogzmc.coreessentials.CoreEssentials;
+import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitTask;
 
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Colours player names in the tab list.
+ *
+ * The last name set for each player is cached, so players whose name didn't change are skipped (Bukkit sends a remove
+ * and an add packet to everyone for every change). Permission reloads queue every player and refresh them in batches
+ * of {@link #BATCH_SIZE} per tick instead of all at once. All of this state is only used on the main thread.
+ */
 public final class TabColorManager implements Listener, GroupReloadObserver {
+    private final static int BATCH_SIZE = 10;
+
+    private final Map<CPlayer, String> listNames = new HashMap<>();
+    private final LinkedHashSet<CPlayer> pendingUpdates = new LinkedHashSet<>();
+    private BukkitTask batchTask;
+
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onPlayerJoin(PlayerJoinEvent event) {
         updatePlayerListName(Core.getOnlinePlayer(event.getPlayer()));
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        CPlayer onlinePlayer = Core.getOnlinePlayer(event.getPlayer());
+        listNames.remove(onlinePlayer);
+        pendingUpdates.remove(onlinePlayer);
+    }
+
     void updatePlayerListName(CPlayer player) {
+        pendingUpdates.remove(player);
+        String listName = getPlayerListName(player);
+        if (listName.equals(listNames.get(player))) return;
+        listNames.put(player, listName);
+        player.getBukkitPlayer().setPlayerListName(listName);
+    }
+
+    private String getPlayerListName(CPlayer player) {
         String tablistColor = player.getTablistColor() == null ? player.getPrimaryGroup().getTablistColor() : player.getTablistColor();
         String s = (tablistColor == null || player.hasDisplayName() ? Core.getPermissionsManager().getDefaultGroup().getTablistColor() : tablistColor) + player.getDisplayName();
         s = s.substring(0, Math.min(16, s.length()));
-        player.getBukkitPlayer().setPlayerListName(ChatColor.translateAlternateColorCodes('&', s));
+        return ChatColor.translateAlternateColorCodes('&', s);
     }
 
     @Override
     public void onReloadPermissions(CMongoPermissionsManager manager) {
+        //Reloads come from the async save task, everything here is only touched on the main thread
+        Bukkit.getScheduler().runTask(CoreEssentials.getInstance(), new Runnable() {
+            @Override
+            public void run() {
+                queueAllPlayers();
+            }
+        });
+    }
+
+    private void queueAllPlayers() {
         for (CPlayer cPlayer : Core.getPlayerManager()) {
-            updatePlayerListName(cPlayer);
+            pendingUpdates.add(cPlayer);
         }
+        if (batchTask != null || pendingUpdates.size() == 0) return;
+        batchTask = Bukkit.getScheduler().runTaskTimer(CoreEssentials.getInstance(), new Runnable() {
+            @Override
+            public void run() {
+                Iterator<CPlayer> iterator = pendingUpdates.iterator();
+                for (int x = 0; x < BATCH_SIZE && iterator.hasNext(); x++) {
+                    CPlayer player = iterator.next();
+                    iterator.remove();
+                    if (player.isOnline()) updatePlayerListName(player);
+                }
+                if (pendingUpdates.size() != 0) return;
+                batchTask.cancel();
+                batchTask = null;
+            }
+        }, 1, 1);
     }
 }
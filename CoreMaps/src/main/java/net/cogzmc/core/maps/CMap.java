@@ -1,64 +1,68 @@
 package net.cogzmc.core.maps;
 
-import lombok.AccessLevel;
-import lombok.Data;
-import lombok.NonNull;
-import lombok.Setter;
-import net.lingala.zip4j.core.ZipFile;
-import net.lingala.zip4j.exception.ZipException;
+import lombok.*;
+import net.cogzmc.core.util.Point;
 import org.bson.types.ObjectId;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.WorldCreator;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
+/**
+ * A map, described by the metadata stored alongside its archive. The archive itself is only fetched once the map is
+ * {@link #load(String) loaded}.
+ */
 @Data
+@EqualsAndHashCode(of = "mapId")
 @Setter(AccessLevel.NONE)
 public final class CMap {
     @NonNull private final UUID mapId;
     private World world;
-    private File zipFileHandle;
     private File worldFile;
     private boolean loaded = false;
-    private String name;
+    private String worldName;
+    /* Metadata, saved with CMapManager#saveMetadata */
+    @Setter private String name;
+    @Setter private String author;
+    @Setter(AccessLevel.PACKAGE) private long size;
+    @Setter(AccessLevel.PACKAGE) private String checksum;
+    private final List<Point> spawnPoints = new ArrayList<>();
+    private final Map<String, String> attributes = new HashMap<>();
     @Setter(AccessLevel.PACKAGE) private ObjectId gridFSId = null;
     @Setter(AccessLevel.PACKAGE) private ObjectId mongoId = null;
 
     public CMap(UUID mapId, World world) {
         this.mapId = mapId;
         this.world = world;
-        this.zipFileHandle = null;
         this.worldFile = world.getWorldFolder();
+        this.worldName = world.getName();
         this.loaded = true;
     }
 
-    public CMap(UUID mapId, File zipFileHandle) {
+    public CMap(UUID mapId) {
         this.mapId = mapId;
-        this.zipFileHandle = zipFileHandle;
-        this.worldFile = null;
         this.world = null;
+        this.worldFile = null;
         this.loaded = false;
     }
 
     public void load(String name) {
         if (loaded) throw new IllegalStateException("You cannot load a map that is already loaded!");
-        File file1;
-        try {
-            ZipFile file = new ZipFile(zipFileHandle);
-            file1 = new File(Bukkit.getWorldContainer(), name);
-            file1.mkdir();
-            file.extractAll(file1.getPath());
-        } catch (ZipException e) {
-            throw new RuntimeException(e);
-        }
+        File file1 = new File(Bukkit.getWorldContainer(), name);
+        file1.mkdir();
+        CoreMaps.getInstance().getMapManager().extractArchive(this, file1);
         World world1 = Bukkit.createWorld(WorldCreator.name(name).environment(World.Environment.NORMAL));
         if (world1 == null) throw new RuntimeException("Could not load world!");
         this.worldFile = world1.getWorldFolder();
         this.world = world1;
         this.loaded = true;
-        this.name = name;
+        this.worldName = name;
     }
 
     public void unload() {
@@ -9,5 +9,20 @@ public interface CMapManager {
     Set<CMap> getMaps();
     Set<CMap> getLoadedMaps();
     CMap getMapByID(UUID mapId);
-    CMap importWorld(World world);
-}
\ No newline at end of file
+
+    /**
+     * Uploads a world as a new map. The world is saved on the calling thread, everything else happens asynchronously.
+     */
+    void importWorld(World world, MapImportCallback callback);
+
+    /**
+     * Uploads a world as a new version of an existing map, or does nothing if none of its files changed since the last
+     * upload.
+     */
+    void updateMap(CMap map, World world, MapImportCallback callback);
+
+    /**
+     * Saves changes to a map's name, author, spawn points, or attributes.
+     */
+    void saveMetadata(CMap map);
+}
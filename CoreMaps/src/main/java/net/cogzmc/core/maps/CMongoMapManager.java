@@ -1,7 +1,9 @@
 package net.cogzmc.core.maps;
 
 import com.google.common.collect.ImmutableSet;
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
+import com.mongodb.BasicDBObjectBuilder;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 import com.mongodb.gridfs.GridFS;
@@ -10,22 +12,21 @@ import com.mongodb.gridfs.GridFSInputFile;
 import lombok.AccessLevel;
 import lombok.Data;
 import lombok.Getter;
-import net.cogzmc.core.Core;
 import net.cogzmc.core.player.mongo.CMongoDatabase;
 import net.cogzmc.core.player.mongo.MongoKey;
 import net.cogzmc.core.player.mongo.MongoUtils;
-import net.lingala.zip4j.core.ZipFile;
-import net.lingala.zip4j.exception.ZipException;
-import net.lingala.zip4j.model.ZipParameters;
-import net.lingala.zip4j.util.Zip4jConstants;
+import net.cogzmc.core.util.Point;
 import org.bson.types.ObjectId;
+import org.bukkit.Bukkit;
 import org.bukkit.World;
 
-import java.io.File;
-import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.UUID;
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @Data
 public class CMongoMapManager implements CMapManager {
@@ -36,19 +37,31 @@ public class CMongoMapManager implements CMapManager {
     private final CMongoDatabase database;
     @Getter(AccessLevel.NONE) private final Set<CMap> loadedMaps = new HashSet<>();
     private final GridFS bucket;
+    @Getter(AccessLevel.NONE) private final MapCache mapCache;
+    @Getter(AccessLevel.NONE) private final MapExtractor mapExtractor;
+    /* Maps with an upload running, and the uploads waiting behind it. Only used on the main thread. */
+    @Getter(AccessLevel.NONE) private final Map<UUID, Queue<PendingUpload>> uploads = new HashMap<>();
 
-    public CMongoMapManager(CMongoDatabase database) {
+    CMongoMapManager(CMongoDatabase database, MapCache mapCache, MapExtractor mapExtractor) {
         this.database = database;
+        this.mapCache = mapCache;
+        this.mapExtractor = mapExtractor;
         this.bucket = new GridFS(database.getMongoDatabase(), MAPS_GRIDFS);
+        database.getCollection(MAPS_COLLECTION).createIndex(new BasicDBObject(IDENTIFIER, 1));
+        database.getCollection(MAPS_COLLECTION).createIndex(new BasicDBObject(NAME, 1));
     }
 
+    /**
+     * Lists every map from its metadata alone. None of the archives are downloaded, that happens in {@link CMap#load(String)}.
+     */
     @Override
     public Set<CMap> getMaps() {
         DBCollection mapsCollection = database.getCollection(MAPS_COLLECTION);
         Set<CMap> maps = new HashSet<>();
         maps.addAll(loadedMaps);
         for (DBObject dbObject : mapsCollection.find()) {
-            maps.add(mapFromDBObject(dbObject));
+            CMap map = mapFromDBObject(dbObject);
+            if (map != null) maps.add(map);
         }
         return ImmutableSet.copyOf(maps);
     }
@@ -62,62 +75,323 @@ public class CMongoMapManager implements CMapManager {
     public CMap getMapByID(UUID mapId) {
         DBObject one = database.getCollection(MAPS_COLLECTION).findOne(new BasicDBObject(MAP_ID_KEY, mapId.toString()));
         if (one == null) throw new IllegalArgumentException("The ID could not be located!");
-        return mapFromDBObject(one);
+        CMap map = mapFromDBObject(one);
+        if (map == null) throw new IllegalArgumentException("The archive for this map could not be located!");
+        return map;
     }
 
     @Override
-    public CMap importWorld(World world) {
-        UUID uuid = UUID.randomUUID();
-        File tempFile = new File(CoreMaps.getInstance().getDataFolder(), String.valueOf(Core.getRandom().nextInt(10000)) + ".zip.tmp");
-        ObjectId objectId;
-        try {
-            ZipFile zipFile = new ZipFile(tempFile);
-            ZipParameters parameters = new ZipParameters();
-            parameters.setCompressionMethod(Zip4jConstants.COMP_DEFLATE);
-            parameters.setCompressionLevel(Zip4jConstants.DEFLATE_LEVEL_NORMAL);
-            for (String s : world.getWorldFolder().list()) {
-                File file = new File(world.getWorldFolder(), s);
-                if (file.isDirectory()) zipFile.addFolder(file, parameters);
-                else zipFile.addFile(file, parameters);
+    public void importWorld(World world, MapImportCallback callback) {
+        CMap cMap = new CMap(UUID.randomUUID(), world);
+        cMap.setName(world.getName());
+        cMap.getSpawnPoints().add(Point.of(world.getSpawnLocation()));
+        upload(cMap, world, callback);
+    }
+
+    @Override
+    public void updateMap(CMap map, World world, MapImportCallback callback) {
+        upload(map, world, callback);
+    }
+
+    /* One upload runs per map at a time, so each one replaces the archive the one before it made */
+    private void upload(CMap map, World world, MapImportCallback callback) {
+        PendingUpload upload = new PendingUpload(map, world, callback);
+        Queue<PendingUpload> queued = uploads.get(map.getMapId());
+        if (queued != null) {
+            queued.add(upload);
+            return;
+        }
+        uploads.put(map.getMapId(), new LinkedList<PendingUpload>());
+        startUpload(upload);
+    }
+
+    /*
+     * Hashes every file in the world, and if any changed since the map's last archive, compresses the world straight
+     * into a new GridFS file. The world isn't saved again until that's done, everything else happens off the main thread.
+     */
+    private void startUpload(final PendingUpload upload) {
+        final CMap map = upload.getMap();
+        final World world = upload.getWorld();
+        final MapImportCallback callback = upload.getCallback();
+        final boolean autoSave = world.isAutoSave();
+        world.save();
+        world.setAutoSave(false); //Chunk unloads included, so the region files hold still while they're read
+        final File worldFolder = world.getWorldFolder();
+        final ObjectId previousArchive = map.getGridFSId();
+        final int compressionLevel = CoreMaps.getInstance().getConfig().getInt("map-import.compression-level", Deflater.DEFAULT_COMPRESSION);
+        Bukkit.getScheduler().runTaskAsynchronously(CoreMaps.getInstance(), new Runnable() {
+            @Override
+            public void run() {
+                GridFSInputFile archive = null;
+                try {
+                    //Saves from before autosave was turned off can still be landing, if so the files are read again
+                    for (int attempt = 1; archive == null; attempt++) {
+                        List<String> paths = new ArrayList<>();
+                        listFiles(worldFolder, "", paths);
+                        Map<String, String> fileHashes = new LinkedHashMap<>();
+                        long bytesTotal = 0;
+                        for (String path : paths) {
+                            File file = new File(worldFolder, path);
+                            fileHashes.put(path, hash(file));
+                            bytesTotal += file.length();
+                        }
+                        if (previousArchive != null && fileHashes.equals(getFileHashes(previousArchive))) {
+                            finishUpload(upload, autoSave, new Runnable() {
+                                @Override
+                                public void run() {
+                                    callback.onComplete(map);
+                                }
+                            });
+                            return;
+                        }
+                        archive = writeArchive(map, worldFolder, fileHashes, bytesTotal, compressionLevel, callback);
+                        if (archive == null && attempt == MAX_UPLOAD_ATTEMPTS) throw new IOException("The world kept changing while it was being uploaded!");
+                    }
+                } catch (final Exception e) {
+                    finishUpload(upload, autoSave, new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onFailure(e);
+                        }
+                    });
+                    return;
+                }
+                final GridFSInputFile uploaded = archive;
+                finishUpload(upload, autoSave, new Runnable() {
+                    @Override
+                    public void run() {
+                        map.setGridFSId((ObjectId) uploaded.getId());
+                        map.setSize(uploaded.getLength());
+                        map.setChecksum(uploaded.getMD5());
+                        if (map.isLoaded()) loadedMaps.add(map);
+                        saveMetadata(map);
+                        if (previousArchive != null) {
+                            Bukkit.getScheduler().runTaskAsynchronously(CoreMaps.getInstance(), new Runnable() {
+                                @Override
+                                public void run() {
+                                    removeArchive(previousArchive);
+                                }
+                            });
+                        }
+                        callback.onComplete(map);
+                    }
+                });
             }
-            objectId = storeMap(zipFile.getFile());
-        } catch (ZipException e) {
-            throw new RuntimeException(e);
+        });
+    }
+
+    /* Back on the main thread, puts autosave back, runs the callback, and starts the next upload for the map */
+    private void finishUpload(final PendingUpload upload, final boolean autoSave, final Runnable callback) {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                upload.getWorld().setAutoSave(autoSave);
+                try {
+                    callback.run();
+                } finally {
+                    UUID mapId = upload.getMap().getMapId();
+                    PendingUpload next = uploads.get(mapId).poll();
+                    if (next == null) uploads.remove(mapId);
+                    else startUpload(next);
+                }
+            }
+        });
+    }
+
+    /*
+     * Compresses the files into a new GridFS file, hashing them from the same read. If any of them no longer match
+     * fileHashes the archive is thrown away and null is returned, and if anything fails it's thrown away too.
+     */
+    private GridFSInputFile writeArchive(CMap map, File worldFolder, Map<String, String> fileHashes, final long bytesTotal, int compressionLevel, final MapImportCallback callback) throws IOException {
+        GridFSInputFile archive = bucket.createFile();
+        archive.setFilename(map.getMapId() + ".zip");
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long bytesDone = 0;
+        long lastProgress = System.currentTimeMillis();
+        boolean changed = false;
+        //Closing the stream is what saves the file to GridFS
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(archive.getOutputStream())) {
+            zipOutputStream.setLevel(compressionLevel);
+            BasicDBList hashList = new BasicDBList();
+            for (Map.Entry<String, String> fileHash : fileHashes.entrySet()) {
+                zipOutputStream.putNextEntry(new ZipEntry(fileHash.getKey()));
+                try (InputStream inputStream = new FileInputStream(new File(worldFolder, fileHash.getKey()))) {
+                    int read;
+                    while ((read = inputStream.read(buffer)) != -1) {
+                        zipOutputStream.write(buffer, 0, read);
+                        digest.update(buffer, 0, read);
+                        bytesDone += read;
+                    }
+                }
+                zipOutputStream.closeEntry();
+                String hash = MapExtractor.toHex(digest.digest());
+                if (!hash.equals(fileHash.getValue())) changed = true;
+                hashList.add(new BasicDBObject(FILE_PATH, fileHash.getKey()).append(FILE_HASH, hash));
+                if (System.currentTimeMillis() - lastProgress < PROGRESS_INTERVAL_MILLIS) continue;
+                lastProgress = System.currentTimeMillis();
+                final long progress = bytesDone;
+                runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onProgress(progress, bytesTotal);
+                    }
+                });
+            }
+            archive.setMetaData(new BasicDBObject(FILE_HASHES, hashList));
+        } catch (IOException | RuntimeException e) {
+            removeArchive((ObjectId) archive.getId());
+            throw e;
         }
-        CMap cMap = new CMap(uuid, world);
-        cMap.setGridFSId(objectId);
-        this.loadedMaps.add(cMap);
-        database.getCollection(MAPS_COLLECTION).save(dbObjectFromMap(cMap));
-        tempFile.delete();
-        return cMap;
+        if (!changed) return archive;
+        removeArchive((ObjectId) archive.getId());
+        return null;
+    }
+
+    /* Chunks are removed on their own too, in case the file document never got saved */
+    private void removeArchive(ObjectId archiveId) {
+        bucket.remove(archiveId);
+        bucket.getChunksCollection().remove(new BasicDBObject("files_id", archiveId));
+    }
+
+    private Map<String, String> getFileHashes(ObjectId archiveId) {
+        GridFSDBFile archive = bucket.findOne(archiveId);
+        if (archive == null || archive.getMetaData() == null) return null;
+        BasicDBList hashList = MongoUtils.getValueFrom(archive.getMetaData(), FILE_HASHES, BasicDBList.class);
+        if (hashList == null) return null;
+        Map<String, String> fileHashes = new LinkedHashMap<>();
+        for (Object o : hashList) {
+            DBObject fileHash = (DBObject) o;
+            fileHashes.put(MongoUtils.getValueFrom(fileHash, FILE_PATH, String.class), MongoUtils.getValueFrom(fileHash, FILE_HASH, String.class));
+        }
+        return fileHashes;
+    }
+
+    private static void listFiles(File directory, String prefix, List<String> paths) {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.isDirectory()) listFiles(file, prefix + file.getName() + "/", paths);
+            else if (!file.getName().equals("session.lock")) paths.add(prefix + file.getName()); //Held by the server that has the world open
+        }
+    }
+
+    private static String hash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) digest.update(buffer, 0, read);
+        }
+        return MapExtractor.toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void runOnMainThread(Runnable runnable) {
+        Bukkit.getScheduler().runTask(CoreMaps.getInstance(), runnable);
     }
 
-    private ObjectId storeMap(File file) {
+    @Override
+    public void saveMetadata(CMap map) {
+        DBObject dbObject = dbObjectFromMap(map);
+        database.getCollection(MAPS_COLLECTION).save(dbObject);
+        map.setMongoId((ObjectId) dbObject.get(MongoKey.ID_KEY.toString()));
+    }
+
+    /* Only here is the archive itself read from GridFS, and only if it isn't in the local cache already */
+    void extractArchive(final CMap map, File destination) {
+        File cached = mapCache.get(map.getChecksum());
+        if (cached != null) {
+            try {
+                MapCache.copy(cached, destination);
+                return;
+            } catch (IOException e) {
+                CoreMaps.getInstance().getLogger().warning("Could not copy " + map.getName() + " from the map cache, downloading it instead: " + e.getMessage());
+            }
+        }
+        GridFSDBFile one = bucket.findOne(map.getGridFSId());
+        if (one == null) throw new IllegalStateException("The archive for this map could not be located!");
+        final File staging = mapCache.createStagingDirectory();
+        boolean verified = false;
         try {
-            GridFSInputFile file1 = bucket.createFile(file);
-            file1.save();
-            return (ObjectId) file1.get(MongoKey.ID_KEY.toString());
+            //Inflated straight from the GridFS chunks into the world and the cache in one pass, the archive itself never touches the disk
+            String checksum = mapExtractor.extract(one.getInputStream(), destination, staging);
+            if (!checksum.equals(one.getMD5())) throw new IllegalStateException("The archive for " + map.getName() + " is corrupt! (Expected " + one.getMD5() + " but got " + checksum + ")");
+            verified = true;
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            if (!verified) {
+                MapCache.delete(staging);
+                MapCache.delete(destination); //So a half written world is never loaded
+            }
         }
+        //Publishing walks and evicts the cache, which doesn't need to hold up the world loading
+        Bukkit.getScheduler().runTaskAsynchronously(CoreMaps.getInstance(), new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mapCache.publish(map.getChecksum(), staging);
+                } catch (IOException e) {
+                    CoreMaps.getInstance().getLogger().warning("Could not add " + map.getName() + " to the map cache: " + e.getMessage());
+                } finally {
+                    if (staging.exists()) MapCache.delete(staging);
+                }
+            }
+        });
     }
 
     private final static String IDENTIFIER = "uuid";
     private final static String GRIDFS_FILE = "file";
+    private final static String NAME = "name";
+    private final static String AUTHOR = "author";
+    private final static String SIZE = "size";
+    private final static String CHECKSUM = "checksum";
+    private final static String SPAWN_POINTS = "spawn_points";
+    private final static String ATTRIBUTES = "attributes";
+    private final static String FILE_HASHES = "file_hashes";
+    private final static String FILE_PATH = "path";
+    private final static String FILE_HASH = "md5";
+    private final static int BUFFER_SIZE = 64 * 1024;
+    private final static long PROGRESS_INTERVAL_MILLIS = 500;
+    private final static int MAX_UPLOAD_ATTEMPTS = 3;
 
+    /* Null for a map from before the metadata was stored whose archive is gone, which can't be loaded anyway */
     private CMap mapFromDBObject(DBObject object) {
         UUID uuid = UUID.fromString(MongoUtils.getValueFrom(object, IDENTIFIER, String.class));
-        GridFSDBFile one = bucket.findOne(new BasicDBObject(MongoKey.ID_KEY.toString(), MongoUtils.getValueFrom(object, GRIDFS_FILE, ObjectId.class)));
-        File tempFile;
-        try {
-            tempFile = new File(CoreMaps.getInstance().getDataFolder(), Core.getRandom().nextInt(100000) + ".zip.tmp");
-            one.writeTo(tempFile);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        CMap cMap = new CMap(uuid, tempFile);
-        cMap.setGridFSId(((ObjectId) one.get(MongoKey.ID_KEY.toString())));
+        CMap cMap = new CMap(uuid);
+        cMap.setGridFSId(MongoUtils.getValueFrom(object, GRIDFS_FILE, ObjectId.class));
         cMap.setMongoId(((ObjectId) object.get(MongoKey.ID_KEY.toString())));
+        cMap.setName(MongoUtils.getValueFrom(object, NAME, String.class));
+        cMap.setAuthor(MongoUtils.getValueFrom(object, AUTHOR, String.class));
+        BasicDBList spawnPoints = MongoUtils.getValueFrom(object, SPAWN_POINTS, BasicDBList.class);
+        if (spawnPoints != null) {
+            for (Object spawnPoint : spawnPoints) cMap.getSpawnPoints().add(pointFromDBObject((DBObject) spawnPoint));
+        }
+        DBObject attributes = MongoUtils.getValueFrom(object, ATTRIBUTES, DBObject.class);
+        if (attributes != null) cMap.getAttributes().putAll(MongoUtils.getMapFor(attributes, String.class));
+        String checksum = MongoUtils.getValueFrom(object, CHECKSUM, String.class);
+        if (checksum == null) {
+            //Maps from before the metadata was stored get it from the GridFS file document, which doesn't read the archive
+            GridFSDBFile archive = cMap.getGridFSId() == null ? null : bucket.findOne(cMap.getGridFSId());
+            if (archive == null) {
+                CoreMaps.getInstance().getLogger().warning("Skipping map " + cMap.getName() + " (" + uuid + "), its archive could not be located!");
+                return null;
+            }
+            cMap.setSize(archive.getLength());
+            cMap.setChecksum(archive.getMD5());
+            saveMetadata(cMap);
+        } else {
+            cMap.setSize(MongoUtils.getValueFrom(object, SIZE, Long.class));
+            cMap.setChecksum(checksum);
+        }
         return cMap;
     }
 
@@ -126,6 +400,37 @@ public class CMongoMapManager implements CMapManager {
         if (map.getMongoId() != null) basicDBObject.put(MongoKey.ID_KEY.toString(), map.getMongoId());
         if (map.getGridFSId() != null) basicDBObject.put(GRIDFS_FILE, map.getGridFSId());
         basicDBObject.put(IDENTIFIER, map.getMapId().toString());
+        basicDBObject.put(NAME, map.getName());
+        basicDBObject.put(AUTHOR, map.getAuthor());
+        basicDBObject.put(SIZE, map.getSize());
+        basicDBObject.put(CHECKSUM, map.getChecksum());
+        BasicDBList spawnPoints = new BasicDBList();
+        for (Point point : map.getSpawnPoints()) spawnPoints.add(dbObjectFromPoint(point));
+        basicDBObject.put(SPAWN_POINTS, spawnPoints);
+        basicDBObject.put(ATTRIBUTES, MongoUtils.getDBObjectFor(map.getAttributes()));
         return basicDBObject;
     }
+
+    private static DBObject dbObjectFromPoint(Point point) {
+        return BasicDBObjectBuilder.start("x", point.getX())
+                .add("y", point.getY())
+                .add("z", point.getZ())
+                .add("pitch", point.getPitch().doubleValue())
+                .add("yaw", point.getYaw().doubleValue()).get();
+    }
+
+    private static Point pointFromDBObject(DBObject object) {
+        return Point.of(((Number) object.get("x")).doubleValue(),
+                ((Number) object.get("y")).doubleValue(),
+                ((Number) object.get("z")).doubleValue(),
+                ((Number) object.get("pitch")).floatValue(),
+                ((Number) object.get("yaw")).floatValue());
+    }
+
+    @Data
+    private static final class PendingUpload {
+        private final CMap map;
+        private final World world;
+        private final MapImportCallback callback;
+    }
 }
@@ -6,6 +6,8 @@ import net.cogzmc.core.modular.ModularPlugin;
 import net.cogzmc.core.modular.ModuleMeta;
 import net.cogzmc.core.player.mongo.CMongoDatabase;
 
+import java.io.File;
+
 @ModuleMeta(
         name = "CoreMaps",
         description = "Manages maps for a network based, or single server."
@@ -13,11 +15,14 @@ import net.cogzmc.core.player.mongo.CMongoDatabase;
 public final class CoreMaps extends ModularPlugin {
     @Getter private static CoreMaps instance;
     @Getter private CMongoMapManager mapManager;
+    private MapExtractor mapExtractor;
 
     @Override
     protected void onModuleEnable() throws Exception {
         if (!(Core.getInstance().getCDatabase() instanceof CMongoDatabase)) throw new IllegalStateException("THis is a mongo bean in a strange world!");
-        mapManager = new CMongoMapManager(((CMongoDatabase) Core.getInstance().getCDatabase()));
+        MapCache mapCache = new MapCache(new File(getConfig().getString("map-cache.directory")), getConfig().getLong("map-cache.max-size-mb") * 1024 * 1024);
+        mapExtractor = new MapExtractor();
+        mapManager = new CMongoMapManager(((CMongoDatabase) Core.getInstance().getCDatabase()), mapCache, mapExtractor);
         instance = this;
     }
 
@@ -25,7 +30,7 @@ public final class CoreMaps extends ModularPlugin {
     protected void onModuleDisable() throws Exception {
         for (CMap cMap : mapManager.getLoadedMaps()) {
             if (cMap.isLoaded()) cMap.unload();
-            if (cMap.getZipFileHandle() != null && cMap.getZipFileHandle().exists()) cMap.getZipFileHandle().delete();
         }
+        mapExtractor.shutdown();
     }
 }
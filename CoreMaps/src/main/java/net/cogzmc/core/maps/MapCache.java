@@ -0,0 +1,182 @@
+package net.cogzmc.core.maps;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * Extracted map archives on local disk, in one directory per archive checksum, so a map that was loaded recently is
+ * copied from here rather than downloaded again.
+ *
+ * Entries are extracted into a staging directory and renamed into place, so an entry is either complete or missing,
+ * and more than one server on a host can share the same cache directory. Extractions are verified against the
+ * archive's checksum before they're published, and each entry holds a manifest of its files' sizes and modification
+ * times as of then. A hit only compares those, so it doesn't read the files, and an entry that no longer matches is
+ * treated as missing and removed. Once the cache is larger than its limit, the least recently used entries are removed.
+ */
+final class MapCache {
+    private final static String STAGING_PREFIX = ".staging-";
+    private final static long STALE_STAGING_MILLIS = 60 * 60 * 1000;
+    private final static String MANIFEST = ".manifest";
+
+    private final File directory;
+    private final long maxSizeBytes;
+
+    MapCache(File directory, long maxSizeBytes) {
+        this.directory = directory;
+        this.maxSizeBytes = maxSizeBytes;
+        directory.mkdirs();
+        //Left behind by servers that stopped in the middle of an extraction
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.getName().startsWith(STAGING_PREFIX) && file.lastModified() < System.currentTimeMillis() - STALE_STAGING_MILLIS) delete(file);
+        }
+    }
+
+    /**
+     * Gets the extracted archive with this checksum, and marks it as used.
+     * @return The directory holding the extracted archive, or {@code null} if it isn't cached or doesn't match its manifest.
+     */
+    File get(String checksum) {
+        File entry = new File(directory, checksum);
+        if (!entry.isDirectory()) return null;
+        if (!matchesManifest(entry)) {
+            discard(entry);
+            return null;
+        }
+        entry.setLastModified(System.currentTimeMillis());
+        return entry;
+    }
+
+    File createStagingDirectory() {
+        File staging = new File(directory, STAGING_PREFIX + UUID.randomUUID());
+        if (!staging.mkdirs()) throw new IllegalStateException("Could not create " + staging.getPath());
+        return staging;
+    }
+
+    /**
+     * Moves a finished extraction, already verified against the archive's checksum, into the cache.
+     * @param checksum The checksum of the archive that was extracted.
+     * @param staging A directory from {@link #createStagingDirectory()}.
+     * @return The cached directory, which may have been published by another server first.
+     * @throws IOException If the manifest couldn't be written, or the directory couldn't be moved.
+     */
+    File publish(String checksum, File staging) throws IOException {
+        Properties manifest = new Properties();
+        manifest.putAll(describe(staging));
+        try (OutputStream outputStream = new FileOutputStream(new File(staging, MANIFEST))) {
+            manifest.store(outputStream, null);
+        }
+        File entry = new File(directory, checksum);
+        try {
+            Files.move(staging.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (!entry.isDirectory()) throw e;
+            delete(staging); //Someone else got there first with the same archive
+        }
+        entry.setLastModified(System.currentTimeMillis());
+        evict(entry);
+        return entry;
+    }
+
+    private void evict(File keep) {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        List<File> entries = new ArrayList<>();
+        final Map<File, Long> lastUsed = new HashMap<>();
+        long totalSize = 0;
+        for (File file : files) {
+            if (!file.isDirectory() || file.getName().startsWith(STAGING_PREFIX)) continue;
+            entries.add(file);
+            lastUsed.put(file, file.lastModified());
+            totalSize += sizeOf(file);
+        }
+        Collections.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return lastUsed.get(o1).compareTo(lastUsed.get(o2));
+            }
+        });
+        for (File entry : entries) {
+            if (totalSize <= maxSizeBytes) break;
+            if (entry.equals(keep)) continue;
+            totalSize -= sizeOf(entry);
+            discard(entry);
+        }
+    }
+
+    private void discard(File entry) {
+        //Renamed away first, so nobody finds a half deleted entry
+        File discarding = new File(directory, STAGING_PREFIX + UUID.randomUUID());
+        if (entry.renameTo(discarding)) delete(discarding);
+    }
+
+    private static boolean matchesManifest(File entry) {
+        File manifestFile = new File(entry, MANIFEST);
+        if (!manifestFile.isFile()) return false;
+        Properties manifest = new Properties();
+        try (InputStream inputStream = new FileInputStream(manifestFile)) {
+            manifest.load(inputStream);
+            return manifest.equals(describe(entry));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /* Every file in an entry besides the manifest, by path, to its size and modification time */
+    private static Map<String, String> describe(File entry) throws IOException {
+        final Path root = entry.toPath();
+        final Map<String, String> files = new HashMap<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String name = root.relativize(file).toString().replace(File.separatorChar, '/');
+                if (!name.equals(MANIFEST)) files.put(name, attrs.size() + " " + attrs.lastModifiedTime().toMillis());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Copies a cached entry into a world folder.
+     * @throws IOException If the entry couldn't be read, including if it was evicted part way through.
+     */
+    static void copy(File source, File destination) throws IOException {
+        final Path sourcePath = source.toPath();
+        final Path destinationPath = destination.toPath();
+        Files.walkFileTree(sourcePath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(destinationPath.resolve(sourcePath.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (sourcePath.relativize(file).toString().equals(MANIFEST)) return FileVisitResult.CONTINUE;
+                Files.copy(file, destinationPath.resolve(sourcePath.relativize(file)), StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static long sizeOf(File file) {
+        if (!file.isDirectory()) return file.length();
+        long size = 0;
+        File[] files = file.listFiles();
+        if (files == null) return 0;
+        for (File file1 : files) size += sizeOf(file1);
+        return size;
+    }
+
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File file1 : files) delete(file1);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,233 @@
+package net.cogzmc.core.maps;
+
+import java.io.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extracts map archives straight from a stream, such as a GridFS file, without writing the archive to disk first.
+ *
+ * Inflating has to happen in order, but region files make up most of a world and are written out on a few threads
+ * while the next entry is being inflated. Reads go through a pool of fixed size buffers, so extracting a large world
+ * doesn't allocate one array per file. At most {@link #MAX_PENDING_BYTES} of region files wait in memory per extraction,
+ * past that they're written on the extracting thread. The same pass can write into more than one directory, so a world
+ * and its cached copy come from a single download.
+ */
+final class MapExtractor {
+    private final static int BUFFER_SIZE = 64 * 1024;
+    private final static int POOLED_BUFFERS = 256;
+    private final static int WRITER_THREADS = 3;
+    private final static int MAX_PENDING_BYTES = 16 * 1024 * 1024;
+
+    private final ExecutorService writers;
+    private final BlockingQueue<byte[]> bufferPool = new ArrayBlockingQueue<>(POOLED_BUFFERS);
+
+    MapExtractor() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        writers = Executors.newFixedThreadPool(WRITER_THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CoreMaps Extractor #" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Extracts every entry of a zip archive into one or more directories.
+     * @param inputStream The archive. It's read to the end, and closed.
+     * @param destinations The directories to extract into, each gets every entry.
+     * @return The MD5 of the whole archive, as lowercase hex, to verify it against where it came from.
+     * @throws IOException If the archive couldn't be read, or any file couldn't be written.
+     */
+    String extract(InputStream inputStream, File... destinations) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        DigestInputStream digestInputStream = new DigestInputStream(inputStream, digest);
+        ZipInputStream zipInputStream = new ZipInputStream(digestInputStream);
+        String[] destinationPaths = new String[destinations.length];
+        for (int x = 0; x < destinations.length; x++) destinationPaths[x] = destinations[x].getCanonicalPath() + File.separator;
+        //One permit per buffer of region file held in memory waiting to be written
+        Semaphore pendingBuffers = new Semaphore(MAX_PENDING_BYTES / BUFFER_SIZE);
+        List<Future<?>> writes = new ArrayList<>();
+        byte[] buffer = acquireBuffer();
+        try {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                File[] files = new File[destinations.length];
+                for (int x = 0; x < destinations.length; x++) {
+                    files[x] = new File(destinations[x], entry.getName());
+                    if (!files[x].getCanonicalPath().startsWith(destinationPaths[x])) throw new IOException("The archive has an entry outside of the world: " + entry.getName());
+                    if (entry.isDirectory()) files[x].mkdirs();
+                    else files[x].getParentFile().mkdirs();
+                }
+                if (entry.isDirectory()) continue;
+                if (!isRegionFile(entry)) {
+                    try (OutputStream outputStream = new FanOutStream(files)) {
+                        int read;
+                        while ((read = zipInputStream.read(buffer)) != -1) outputStream.write(buffer, 0, read);
+                    }
+                    continue;
+                }
+                List<byte[]> chunks = new ArrayList<>();
+                int lastChunkLength = readWithinBudget(zipInputStream, chunks, pendingBuffers);
+                if (lastChunkLength != -1) {
+                    writes.add(writers.submit(new RegionWrite(files, chunks, lastChunkLength, pendingBuffers)));
+                    continue;
+                }
+                //Over budget, what's been read so far and the rest of the entry are written here instead
+                try (OutputStream outputStream = new FanOutStream(files)) {
+                    for (byte[] chunk : chunks) outputStream.write(chunk);
+                    int read;
+                    while ((read = zipInputStream.read(buffer)) != -1) outputStream.write(buffer, 0, read);
+                } finally {
+                    for (byte[] chunk : chunks) releaseBuffer(chunk);
+                    pendingBuffers.release(chunks.size());
+                }
+            }
+            //The central directory isn't read by ZipInputStream, but it's part of the checksum
+            while (digestInputStream.read(buffer) != -1) ;
+        } finally {
+            releaseBuffer(buffer);
+            zipInputStream.close();
+            awaitAll(writes);
+        }
+        return toHex(digest.digest());
+    }
+
+    void shutdown() {
+        writers.shutdown();
+    }
+
+    private static boolean isRegionFile(ZipEntry entry) {
+        return entry.getName().endsWith(".mca") || entry.getName().endsWith(".mcr");
+    }
+
+    /*
+     * Reads the rest of an entry into pooled chunks, taking a permit for each, and returns how much of the last chunk was
+     * filled. If the permits run out it stops with every chunk full and returns -1.
+     */
+    private int readWithinBudget(InputStream inputStream, List<byte[]> chunks, Semaphore pendingBuffers) throws IOException {
+        byte[] chunk = null;
+        int filled = BUFFER_SIZE;
+        while (true) {
+            if (filled == BUFFER_SIZE) {
+                if (!pendingBuffers.tryAcquire()) return -1;
+                chunk = acquireBuffer();
+                chunks.add(chunk);
+                filled = 0;
+            }
+            int read = inputStream.read(chunk, filled, BUFFER_SIZE - filled);
+            if (read == -1) return filled;
+            filled += read;
+        }
+    }
+
+    private byte[] acquireBuffer() {
+        byte[] buffer = bufferPool.poll();
+        return buffer == null ? new byte[BUFFER_SIZE] : buffer;
+    }
+
+    private void releaseBuffer(byte[] buffer) {
+        bufferPool.offer(buffer); //Dropped if the pool is full
+    }
+
+    private static void awaitAll(List<Future<?>> writes) throws IOException {
+        IOException failure = null;
+        for (Future<?> write : writes) {
+            try {
+                write.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new InterruptedIOException("Interrupted while writing region files");
+            } catch (ExecutionException e) {
+                if (failure == null) failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) builder.append(String.format("%02x", b));
+        return builder.toString();
+    }
+
+    private final class RegionWrite implements Callable<Void> {
+        private final File[] files;
+        private final List<byte[]> chunks;
+        private final int lastChunkLength;
+        private final Semaphore pendingBuffers;
+
+        private RegionWrite(File[] files, List<byte[]> chunks, int lastChunkLength, Semaphore pendingBuffers) {
+            this.files = files;
+            this.chunks = chunks;
+            this.lastChunkLength = lastChunkLength;
+            this.pendingBuffers = pendingBuffers;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            try (OutputStream outputStream = new FanOutStream(files)) {
+                for (int x = 0; x < chunks.size(); x++) {
+                    outputStream.write(chunks.get(x), 0, x == chunks.size() - 1 ? lastChunkLength : BUFFER_SIZE);
+                }
+            } finally {
+                for (byte[] chunk : chunks) releaseBuffer(chunk);
+                pendingBuffers.release(chunks.size());
+            }
+            return null;
+        }
+    }
+
+    /* Writes the same bytes to a file in each destination */
+    private static final class FanOutStream extends OutputStream {
+        private final OutputStream[] outputStreams;
+
+        private FanOutStream(File[] files) throws IOException {
+            outputStreams = new OutputStream[files.length];
+            try {
+                for (int x = 0; x < files.length; x++) outputStreams[x] = new FileOutputStream(files[x]);
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            for (OutputStream outputStream : outputStreams) outputStream.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            for (OutputStream outputStream : outputStreams) outputStream.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (OutputStream outputStream : outputStreams) {
+                if (outputStream == null) continue;
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    if (failure == null) failure = e;
+                }
+            }
+            if (failure != null) throw failure;
+        }
+    }
+}
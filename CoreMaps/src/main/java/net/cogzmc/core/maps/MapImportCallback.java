@@ -0,0 +1,21 @@
+package net.cogzmc.core.maps;
+
+/**
+ * Hears about an import started by {@link CMapManager#importWorld(org.bukkit.World, MapImportCallback)} or
+ * {@link CMapManager#updateMap(CMap, org.bukkit.World, MapImportCallback)}. Every method is called on the main thread.
+ */
+public interface MapImportCallback {
+    /**
+     * Called as the world is compressed and uploaded.
+     * @param bytesDone How many bytes of the world folder have been uploaded so far.
+     * @param bytesTotal How many bytes are in the world folder.
+     */
+    void onProgress(long bytesDone, long bytesTotal);
+
+    /**
+     * Called once the archive is uploaded and the map's metadata is saved, or right away if nothing changed.
+     */
+    void onComplete(CMap map);
+
+    void onFailure(Exception e);
+}
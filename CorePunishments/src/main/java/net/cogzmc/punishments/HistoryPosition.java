@@ -0,0 +1,30 @@
+package net.cogzmc.punishments;
+
+import lombok.Data;
+import lombok.NonNull;
+import net.cogzmc.punishments.types.Punishment;
+import net.cogzmc.punishments.types.impl.model.MongoPunishment;
+import org.bson.types.ObjectId;
+
+import java.util.Date;
+
+/**
+ * A place in a player's punishment history, just after a punishment. History is sorted by when punishments were issued
+ * and then by id, so punishments issued in the same millisecond still have an order and none are skipped between pages.
+ */
+@Data
+public final class HistoryPosition implements Comparable<HistoryPosition> {
+    @NonNull private final Date dateIssued;
+    @NonNull private final ObjectId id;
+
+    public static HistoryPosition of(Punishment punishment) {
+        return new HistoryPosition(punishment.getDateIssued(), ((MongoPunishment) punishment).getMongoId());
+    }
+
+    /* Newest first, the same order history is read in */
+    @Override
+    public int compareTo(HistoryPosition o) {
+        int byDate = o.dateIssued.compareTo(dateIssued);
+        return byDate != 0 ? byDate : o.id.compareTo(id);
+    }
+}
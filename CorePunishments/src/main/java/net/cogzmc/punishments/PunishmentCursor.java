@@ -0,0 +1,15 @@
+package net.cogzmc.punishments;
+
+import net.cogzmc.punishments.types.Punishment;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * An iterator over punishments backed by an open database cursor. It must be closed once it's no longer needed, even if
+ * it wasn't read to the end.
+ */
+public interface PunishmentCursor<T extends Punishment> extends Iterator<T>, Closeable {
+    @Override
+    void close();
+}
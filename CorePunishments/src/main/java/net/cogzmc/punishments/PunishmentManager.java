@@ -10,6 +10,20 @@ import java.util.List;
 public interface PunishmentManager<T extends Punishment> extends CPlayerConnectionListener {
     T punish(COfflinePlayer target, String reason, COfflinePlayer issuer) throws PunishmentException;
     List<T> getPunishmentsFor(COfflinePlayer target);
+
+    /**
+     * Reads the target's punishments of this type newest first, only fetching them as the cursor is advanced.
+     * @param target The player whose history to read.
+     * @param after Only punishments after this position are read, to carry on from where a previous page ended. May be {@code null} to start from the newest.
+     * @param limit The most punishments the cursor will return.
+     * @return A cursor over the punishments, in {@link net.cogzmc.punishments.HistoryPosition} order, newest first. It must be closed.
+     */
+    PunishmentCursor<T> getPunishmentHistoryFor(COfflinePlayer target, HistoryPosition after, int limit);
+
+    /**
+     * Counts the target's punishments of this type, without loading them.
+     */
+    long countPunishmentsFor(COfflinePlayer target);
     T getActivePunishmentFor(COfflinePlayer target);
     void revokePunishment(T punishment);
 }
@@ -3,6 +3,7 @@ package net.cogzmc.punishments;
 import net.cogzmc.core.Core;
 import net.cogzmc.core.modular.ModularPlugin;
 import net.cogzmc.core.modular.ModuleMeta;
+import net.cogzmc.core.player.COfflinePlayer;
 import net.cogzmc.core.player.CPlayer;
 import net.cogzmc.core.player.CPlayerConnectionListener;
 import net.cogzmc.core.player.CPlayerJoinException;
@@ -29,6 +30,7 @@ public final class Punishments extends ModularPlugin implements CPlayerConnectio
     @Override
     protected void onModuleEnable() throws Exception {
         Core.getPlayerManager().registerCPlayerConnectionListener(this);
+        new PunishmentStore(); //Before the managers, which reconcile it
         //Notice the order, this is the specific order in which we want the join events passed.
         registerPunishmentManager(IPBan.class, new IPBanManager());
         registerPunishmentManager(Ban.class, new BanManager());
@@ -45,6 +47,65 @@ public final class Punishments extends ModularPlugin implements CPlayerConnectio
         return punishmentManagers.values();
     }
 
+    /**
+     * Gets one page of a player's punishments of every type, newest first.
+     *
+     * Each manager's history is read from a cursor that's already sorted and starts where the last page ended, and the
+     * cursors are merged, so no more than a page is fetched from each type however deep the page is.
+     * @param target The player whose history to read.
+     * @param after Where the previous page ended, or {@code null} for the first page.
+     * @param pageSize How many punishments are on a page.
+     * @return The punishments on the page, which may be fewer than {@code pageSize} on the last page.
+     */
+    public List<Punishment> getPunishmentHistory(COfflinePlayer target, HistoryPosition after, int pageSize) {
+        List<PunishmentCursor<?>> opened = new ArrayList<>();
+        PriorityQueue<HistoryCursor> cursors = new PriorityQueue<>(Math.max(1, punishmentManagers.size()), new Comparator<HistoryCursor>() {
+            @Override
+            public int compare(HistoryCursor o1, HistoryCursor o2) {
+                return HistoryPosition.of(o1.head).compareTo(HistoryPosition.of(o2.head));
+            }
+        });
+        List<Punishment> punishments = new ArrayList<>();
+        try {
+            for (PunishmentManager<?> punishmentManager : punishmentManagers.values()) {
+                PunishmentCursor<?> history = punishmentManager.getPunishmentHistoryFor(target, after, pageSize);
+                opened.add(history);
+                if (history.hasNext()) cursors.add(new HistoryCursor(history.next(), history));
+            }
+            while (punishments.size() < pageSize && !cursors.isEmpty()) {
+                HistoryCursor cursor = cursors.poll();
+                punishments.add(cursor.head);
+                if (!cursor.rest.hasNext()) continue;
+                cursor.head = cursor.rest.next();
+                cursors.add(cursor);
+            }
+        } finally {
+            for (PunishmentCursor<?> history : opened) history.close();
+        }
+        return punishments;
+    }
+
+    /**
+     * Counts a player's punishments of every type.
+     */
+    public long countPunishments(COfflinePlayer target) {
+        long count = 0;
+        for (PunishmentManager<?> punishmentManager : punishmentManagers.values()) {
+            count += punishmentManager.countPunishmentsFor(target);
+        }
+        return count;
+    }
+
+    private static final class HistoryCursor {
+        private Punishment head;
+        private final Iterator<? extends Punishment> rest;
+
+        private HistoryCursor(Punishment head, Iterator<? extends Punishment> rest) {
+            this.head = head;
+            this.rest = rest;
+        }
+    }
+
     private <T extends Punishment> void registerPunishmentManager(Class<T> punishmentClass, PunishmentManager<T> punishmentManager) {
         punishmentManagers.put(punishmentClass, punishmentManager);
         if (TimedPunishment.class.isAssignableFrom(punishmentClass)) //noinspection unchecked
@@ -64,8 +125,14 @@ public final class Punishments extends ModularPlugin implements CPlayerConnectio
 
     @Override
     public void onPlayerLogin(CPlayer player, InetAddress address) throws CPlayerJoinException {
-        for (PunishmentManager<?> punishmentManager : punishmentManagers.values()) {
-            punishmentManager.onPlayerLogin(player, address);
+        //One query for everything active, which every manager then reads from
+        PunishmentStore.getInstance().prefetch(player.getUniqueIdentifier());
+        try {
+            for (PunishmentManager<?> punishmentManager : punishmentManagers.values()) {
+                punishmentManager.onPlayerLogin(player, address);
+            }
+        } finally {
+            PunishmentStore.getInstance().release(player.getUniqueIdentifier());
         }
     }
 
@@ -5,16 +5,22 @@ import net.cogzmc.core.modular.command.ArgumentRequirementException;
 import net.cogzmc.core.modular.command.CommandException;
 import net.cogzmc.core.modular.command.PermissionException;
 import net.cogzmc.core.player.COfflinePlayer;
-import net.cogzmc.punishments.PunishmentManager;
+import net.cogzmc.punishments.HistoryPosition;
 import net.cogzmc.punishments.Punishments;
 import net.cogzmc.punishments.types.Punishment;
 import net.cogzmc.punishments.types.TimedPunishment;
+import net.cogzmc.punishments.types.impl.model.MongoPunishment;
 import org.bukkit.command.CommandSender;
 import org.ocpsoft.prettytime.PrettyTime;
 
 import java.util.*;
 
 public final class LookupCommand extends TargetedCommand {
+    private final static int PAGE_SIZE = 10;
+
+    /* Where each page a sender has looked at ended, so the next page carries on from there instead of from the top */
+    private final Map<CommandSender, PageBoundaries> pageBoundaries = new WeakHashMap<>();
+
     public LookupCommand() {
         super("lookup");
     }
@@ -26,26 +32,33 @@ public final class LookupCommand extends TargetedCommand {
         if (args.length < 1) throw new ArgumentRequirementException("You have not specified a target!");
         COfflinePlayer player = getTargetByArg(args[0]);
         if (player == null) throw new ArgumentRequirementException("The player you specified is not specific enough!");
-        List<Punishment> punishments = new ArrayList<>();
-        for (PunishmentManager<?> punishmentManager : Core.getModule(Punishments.class).getPunishmentManagers()) {
-            for (Punishment punishment : punishmentManager.getPunishmentsFor(player)) {
-                punishments.add(punishment);
+        int page = 1;
+        if (args.length > 1) {
+            try {
+                page = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                throw new ArgumentRequirementException("The page you specified is not a number!");
             }
+            if (page < 1) throw new ArgumentRequirementException("The page you specified is not valid!");
         }
-        Collections.sort(punishments, new Comparator<Punishment>() {
-            @Override
-            public int compare(Punishment o1, Punishment o2) {
-                return (int) (o2.getDateIssued().getTime()-o1.getDateIssued().getTime());
-            }
-        });
-        sender.sendMessage(punishmentsModule.getFormat("lookup-top-line", false, new String[]{"<count>", String.valueOf(punishments.size())}, new String[]{"<target>", player.getName()}));
+        long count = punishmentsModule.countPunishments(player);
+        long pages = Math.max(1, (count + PAGE_SIZE - 1) / PAGE_SIZE);
+        if (page > pages) throw new ArgumentRequirementException("There are only " + pages + " pages of punishments for this player!");
+        //Only this page is read from the database, and only its issuers are looked up
+        List<Punishment> punishments = getPage(sender, player, page);
+        MongoPunishment.resolvePlayers(punishments);
+        sender.sendMessage(punishmentsModule.getFormat("lookup-top-line", false,
+                new String[]{"<count>", String.valueOf(count)},
+                new String[]{"<target>", player.getName()},
+                new String[]{"<page>", String.valueOf(page)},
+                new String[]{"<pages>", String.valueOf(pages)}));
         PrettyTime prettyTime = new PrettyTime();
         for (int x = 0; x < punishments.size(); x++) {
             Punishment punishment = punishments.get(x);
             StringBuilder nameBuilder = new StringBuilder(Punishments.getNameFor(punishment.getClass()));
             nameBuilder.setCharAt(0,Character.toUpperCase(nameBuilder.charAt(0)));
             String dateIssued = prettyTime.format(punishment.getDateIssued());
-            String dateExpires = (punishment instanceof TimedPunishment) ? prettyTime.format(new Date(punishment.getDateIssued().getTime() + ((TimedPunishment) punishment).getLengthInSeconds()*1000)) : "never";
+            String dateExpires = (punishment instanceof TimedPunishment) ? prettyTime.format(new Date(punishment.getDateIssued().getTime() + ((TimedPunishment) punishment).getLengthInSeconds() * 1000L)) : "never";
             sender.sendMessage(punishmentsModule.getFormat("lookup-punishment", false,
                     new String[]{"<active>", punishment.isActive() ? "yes" : "no"},
                     new String[]{"<type>", nameBuilder.toString()},
@@ -53,7 +66,37 @@ public final class LookupCommand extends TargetedCommand {
                     new String[]{"<expires>", dateExpires},
                     new String[]{"<issued>", dateIssued},
                     new String[]{"<reason>", punishment.getMessage()},
-                    new String[]{"<index>", String.valueOf(x+1)}));
+                    new String[]{"<index>", String.valueOf((page - 1) * PAGE_SIZE + x + 1)}));
+        }
+    }
+
+    private List<Punishment> getPage(CommandSender sender, COfflinePlayer target, int page) {
+        PageBoundaries boundaries = pageBoundaries.get(sender);
+        //Starting from the first page again picks up anything issued since
+        if (boundaries == null || page == 1 || !boundaries.target.equals(target.getUniqueIdentifier())) {
+            boundaries = new PageBoundaries(target.getUniqueIdentifier());
+            pageBoundaries.put(sender, boundaries);
+        }
+        int knownPages = Math.min(page - 1, boundaries.ends.size());
+        HistoryPosition after = knownPages == 0 ? null : boundaries.ends.get(knownPages - 1);
+        List<Punishment> punishments = Collections.emptyList();
+        //Pages past the furthest one seen are walked to one page at a time
+        for (int current = knownPages + 1; current <= page; current++) {
+            punishments = Core.getModule(Punishments.class).getPunishmentHistory(target, after, PAGE_SIZE);
+            if (punishments.size() == 0) break;
+            after = HistoryPosition.of(punishments.get(punishments.size() - 1));
+            if (boundaries.ends.size() == current - 1) boundaries.ends.add(after);
+        }
+        return punishments;
+    }
+
+    private static final class PageBoundaries {
+        private final UUID target;
+        /* Where each page ended, by page */
+        private final List<HistoryPosition> ends = new ArrayList<>();
+
+        private PageBoundaries(UUID target) {
+            this.target = target;
         }
     }
 }
@@ -0,0 +1,118 @@
+package net.cogzmc.punishments.types.impl.manager;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A binary radix trie over the bits of IPv4 and IPv6 addresses, holding values for single addresses and CIDR ranges.
+ *
+ * Looking an address up walks at most 32 (or 128) nodes, and returns the value stored on the most specific range that
+ * contains it. More than one value can be stored for the same range, and each is removed on its own.
+ */
+final class AddressTrie<V> {
+    private static final class Node<V> {
+        private Node<V> zero, one;
+        private List<V> values;
+    }
+
+    private final Node<V> ipv4Root = new Node<>();
+    private final Node<V> ipv6Root = new Node<>();
+
+    /**
+     * Adds a value for an address or range.
+     * @param cidr An address like {@code 10.1.2.3}, or a range like {@code 10.1.0.0/16}. Must be an IP literal.
+     * @param value The value to store.
+     * @throws IllegalArgumentException If the address or prefix length is not valid.
+     */
+    synchronized void add(String cidr, V value) {
+        Node<V> node = walk(cidr, true);
+        if (node.values == null) node.values = new ArrayList<>(1);
+        if (!node.values.contains(value)) node.values.add(value);
+    }
+
+    /**
+     * Removes a value from an address or range, if it was added there.
+     */
+    synchronized void remove(String cidr, V value) {
+        Node<V> node = walk(cidr, false);
+        if (node == null || node.values == null) return;
+        node.values.remove(value);
+        if (node.values.size() == 0) node.values = null; //The empty branch is left in place, it's reused if it's banned again
+    }
+
+    /**
+     * Finds a value for the most specific range containing this address.
+     * @return A stored value, or {@code null} if no stored range contains the address.
+     */
+    synchronized V lookup(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        Node<V> node = bytes.length == 4 ? ipv4Root : ipv6Root;
+        V found = first(node);
+        for (int bit = 0; bit < bytes.length * 8 && node != null; bit++) {
+            node = isSet(bytes, bit) ? node.one : node.zero;
+            V value = first(node);
+            if (value != null) found = value;
+        }
+        return found;
+    }
+
+    synchronized void clear() {
+        ipv4Root.zero = ipv4Root.one = null;
+        ipv4Root.values = null;
+        ipv6Root.zero = ipv6Root.one = null;
+        ipv6Root.values = null;
+    }
+
+    private Node<V> walk(String cidr, boolean create) {
+        byte[] bytes = parseAddress(cidr);
+        Node<V> node = bytes.length == 4 ? ipv4Root : ipv6Root;
+        int prefixLength = parsePrefixLength(cidr, bytes.length * 8);
+        for (int bit = 0; bit < prefixLength; bit++) {
+            boolean one = isSet(bytes, bit);
+            Node<V> next = one ? node.one : node.zero;
+            if (next == null) {
+                if (!create) return null;
+                next = new Node<>();
+                if (one) node.one = next;
+                else node.zero = next;
+            }
+            node = next;
+        }
+        return node;
+    }
+
+    private static <V> V first(Node<V> node) {
+        return node == null || node.values == null ? null : node.values.get(0);
+    }
+
+    private static boolean isSet(byte[] bytes, int bit) {
+        return (bytes[bit >> 3] & (0x80 >> (bit & 7))) != 0;
+    }
+
+    private static byte[] parseAddress(String cidr) {
+        int slash = cidr.indexOf('/');
+        String address = slash == -1 ? cidr : cidr.substring(0, slash);
+        //Only literals, so nothing here ever goes to DNS
+        if (!address.matches("[0-9.]+") && !address.contains(":")) throw new IllegalArgumentException("Not an IP address: " + cidr);
+        try {
+            return InetAddress.getByName(address).getAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Not an IP address: " + cidr, e);
+        }
+    }
+
+    private static int parsePrefixLength(String cidr, int maxLength) {
+        int slash = cidr.indexOf('/');
+        if (slash == -1) return maxLength;
+        int prefixLength;
+        try {
+            prefixLength = Integer.parseInt(cidr.substring(slash + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a prefix length: " + cidr, e);
+        }
+        if (prefixLength < 0 || prefixLength > maxLength) throw new IllegalArgumentException("Not a prefix length: " + cidr);
+        return prefixLength;
+    }
+}
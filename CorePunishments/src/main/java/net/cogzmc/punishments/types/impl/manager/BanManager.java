@@ -1,7 +1,6 @@
 package net.cogzmc.punishments.types.impl.manager;
 
 import net.cogzmc.core.Core;
-import net.cogzmc.core.player.COfflinePlayer;
 import net.cogzmc.core.player.CPlayer;
 import net.cogzmc.punishments.Punishments;
 import net.cogzmc.punishments.types.impl.model.Ban;
@@ -9,6 +8,7 @@ import org.bson.types.ObjectId;
 import org.ocpsoft.prettytime.PrettyTime;
 
 import java.util.Date;
+import java.util.UUID;
 
 public final class BanManager extends BaseMongoManager<Ban> {
     public BanManager() {
@@ -16,7 +16,7 @@ public final class BanManager extends BaseMongoManager<Ban> {
     }
 
     @Override
-    Ban createNewPunishment(ObjectId objectId, COfflinePlayer target, String reason, COfflinePlayer issuer, Date issued, Boolean active) {
+    Ban createNewPunishment(ObjectId objectId, UUID target, String reason, UUID issuer, Date issued, Boolean active) {
         return new Ban(objectId, target, reason, issuer, active, issued);
     }
 
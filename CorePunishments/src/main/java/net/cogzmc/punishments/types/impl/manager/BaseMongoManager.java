@@ -6,42 +6,54 @@ import net.cogzmc.core.player.COfflinePlayer;
 import net.cogzmc.core.player.CPlayer;
 import net.cogzmc.core.player.CPlayerJoinException;
 import net.cogzmc.core.player.mongo.CMongoDatabase;
+import net.cogzmc.punishments.HistoryPosition;
+import net.cogzmc.punishments.PunishmentCursor;
 import net.cogzmc.punishments.PunishmentManager;
 import net.cogzmc.punishments.Punishments;
 import net.cogzmc.punishments.types.PunishmentException;
-import net.cogzmc.punishments.types.TimedPunishment;
 import net.cogzmc.punishments.types.impl.TargetOnlinesOnly;
 import net.cogzmc.punishments.types.impl.model.MongoPunishment;
+import net.cogzmc.punishments.types.impl.model.MongoTemporaryPunishment;
 import org.bson.types.ObjectId;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
 import org.ocpsoft.prettytime.Duration;
 import org.ocpsoft.prettytime.PrettyTime;
 
 import java.net.InetAddress;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static net.cogzmc.core.player.mongo.MongoUtils.getValueFrom;
 
 @SuppressWarnings("UnusedParameters")
 abstract class BaseMongoManager<T extends MongoPunishment> implements PunishmentManager<T> {
     protected final DBCollection collection;
-    private final Map<CPlayer, T> activePunishments = new HashMap<>();
+    private final Map<CPlayer, T> activePunishments = new ConcurrentHashMap<>(); //Written on the login thread, read on the main thread
     protected final Class<T> punishmentClazz;
+    /* What this manager's punishments are tagged with in the PunishmentStore */
+    protected final String storeType;
 
     public BaseMongoManager(Class<T> clazz) {
         punishmentClazz = clazz;
         if (Core.getInstance().getCDatabase() == null || !(Core.getInstance().getCDatabase() instanceof CMongoDatabase))
             throw new IllegalStateException("This is a mongo bean in a strange world! (You've used a mongo punishment system with a non-mongo DB");
-        collection = ((CMongoDatabase) Core.getInstance().getCDatabase()).getCollection(clazz.getSimpleName().toLowerCase() + "_punishments");
+        storeType = clazz.getSimpleName().toLowerCase();
+        collection = ((CMongoDatabase) Core.getInstance().getCDatabase()).getCollection(storeType + "_punishments");
         if (collection.getIndexInfo().size() == 1) {
             collection.createIndex(new BasicDBObject(PunishmentKey.TARGET.toString(), 1));
             collection.createIndex(new BasicDBObject(PunishmentKey.ISSUER.toString(), 1));
         }
+        collection.createIndex(new BasicDBObject(PunishmentKey.TARGET.toString(), 1).append(PunishmentKey.DATE_ISSUED.toString(), -1).append("_id", -1));
+        PunishmentStore.getInstance().reconcile(storeType, collection);
     }
 
     private T createNewPunishment(COfflinePlayer target, String reason, COfflinePlayer issuer) {
-        return createNewPunishment(null, target, reason, issuer, new Date(), true);
+        T punishment = createNewPunishment(null, target.getUniqueIdentifier(), reason, issuer.getUniqueIdentifier(), new Date(), true);
+        punishment.setPlayers(target, issuer);
+        return punishment;
     }
-    abstract T createNewPunishment(ObjectId objectId, COfflinePlayer target, String reason, COfflinePlayer issuer, Date issued, Boolean active);
+    abstract T createNewPunishment(ObjectId objectId, UUID target, String reason, UUID issuer, Date issued, Boolean active);
     abstract boolean canConnect(CPlayer player, T punishment);
 
     void onJoin(CPlayer player, T punishment) {}
@@ -50,9 +62,9 @@ abstract class BaseMongoManager<T extends MongoPunishment> implements Punishment
     void onRevoke(CPlayer player, T punishment) {}
 
     DBObject convertToDBObject(T punishment) {
-        BasicDBObjectBuilder builder = BasicDBObjectBuilder.start().add(PunishmentKey.ISSUER.toString(), punishment.getIssuer().getUniqueIdentifier().toString())
+        BasicDBObjectBuilder builder = BasicDBObjectBuilder.start().add(PunishmentKey.ISSUER.toString(), punishment.getIssuerUUID().toString())
                 .add(PunishmentKey.DATE_ISSUED.toString(), punishment.getDateIssued())
-                .add(PunishmentKey.TARGET.toString(), punishment.getTarget().getUniqueIdentifier().toString())
+                .add(PunishmentKey.TARGET.toString(), punishment.getTargetUUID().toString())
                 .add(PunishmentKey.ACTIVE.toString(), punishment.isActive())
                 .add(PunishmentKey.REASON.toString(), punishment.getMessage());
         if (punishment.getMongoId() != null) builder.add("_id", punishment.getMongoId());
@@ -66,7 +78,7 @@ abstract class BaseMongoManager<T extends MongoPunishment> implements Punishment
         String reason = getValueFrom(object, PunishmentKey.REASON, String.class);
         Date issued = getValueFrom(object, PunishmentKey.DATE_ISSUED, Date.class);
         ObjectId id = getValueFrom(object, "_id", ObjectId.class);
-        return createNewPunishment(id, Core.getOfflinePlayerByUUID(target), reason, Core.getOfflinePlayerByUUID(issuer), issued, revoked);
+        return createNewPunishment(id, target, reason, issuer, issued, revoked);
     }
 
     @Override
@@ -74,9 +86,7 @@ abstract class BaseMongoManager<T extends MongoPunishment> implements Punishment
         if (getActivePunishmentFor(target) != null) throw new PunishmentException("A punishment of this type already exists!");
         if (!(target instanceof CPlayer) && punishmentClazz.isAnnotationPresent(TargetOnlinesOnly.class)) throw new PunishmentException("You can only punish online players with this!");
         T newPunishment = createNewPunishment(target, reason, issuer);
-        DBObject dbObject = convertToDBObject(newPunishment);
-        newPunishment.setMongoId((ObjectId) dbObject.get("_id"));
-        collection.save(dbObject);
+        save(newPunishment);
         if (target instanceof CPlayer) onPunish((CPlayer) target, newPunishment);
         return newPunishment;
     }
@@ -91,13 +101,78 @@ abstract class BaseMongoManager<T extends MongoPunishment> implements Punishment
         return punishments;
     }
 
+    @Override
+    public PunishmentCursor<T> getPunishmentHistoryFor(COfflinePlayer target, HistoryPosition after, int limit) {
+        BasicDBObject query = new BasicDBObject(PunishmentKey.TARGET.toString(), target.getUniqueIdentifier().toString());
+        if (after != null) {
+            //Issued earlier, or in the same millisecond with a lower id
+            query.append("$or", Arrays.asList(
+                    new BasicDBObject(PunishmentKey.DATE_ISSUED.toString(), new BasicDBObject("$lt", after.getDateIssued())),
+                    new BasicDBObject(PunishmentKey.DATE_ISSUED.toString(), after.getDateIssued()).append("_id", new BasicDBObject("$lt", after.getId()))));
+        }
+        final DBCursor dbObjects = collection.find(query)
+                .sort(new BasicDBObject(PunishmentKey.DATE_ISSUED.toString(), -1).append("_id", -1))
+                .limit(limit)
+                .batchSize(limit);
+        return new PunishmentCursor<T>() {
+            @Override
+            public boolean hasNext() {
+                return dbObjects.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return getFromDBObject(dbObjects.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("You cannot remove punishments from history!");
+            }
+
+            @Override
+            public void close() {
+                dbObjects.close();
+            }
+        };
+    }
+
+    @Override
+    public long countPunishmentsFor(COfflinePlayer target) {
+        return collection.count(new BasicDBObject(PunishmentKey.TARGET.toString(), target.getUniqueIdentifier().toString()));
+    }
+
     @Override
     public T getActivePunishmentFor(COfflinePlayer target) {
         if (target instanceof CPlayer && activePunishments.containsKey(target)) return activePunishments.get(target);
-        for (T t : getPunishmentsFor(target)) {
-            if (t.isActive()) return t;
+        DBObject active = PunishmentStore.getInstance().getActive(target.getUniqueIdentifier(), storeType);
+        if (active == null) {
+            if (PunishmentStore.getInstance().isReconciled(storeType)) return null;
+            //The store couldn't be reconciled on startup, so it's not trusted to say someone is clear
+            active = collection.findOne(new BasicDBObject(PunishmentKey.TARGET.toString(), target.getUniqueIdentifier().toString()).append(PunishmentKey.ACTIVE.toString(), true));
+            if (active == null) return null;
+            PunishmentStore.getInstance().save(storeType, active);
         }
-        return null;
+        return getFromDBObject(active);
+    }
+
+    /* Marks punishments held for online players as no longer active, without saving them */
+    void deactivateLoaded(Collection<ObjectId> ids) {
+        for (Map.Entry<CPlayer, T> entry : new ArrayList<>(activePunishments.entrySet())) {
+            T punishment = entry.getValue();
+            if (!ids.contains(punishment.getMongoId())) continue;
+            punishment.setActive(false);
+            activePunishments.remove(entry.getKey());
+            onRevoke(entry.getKey(), punishment);
+        }
+    }
+
+    /* Writes the punishment to this type's collection and the store, giving it a mongo id if it's new */
+    void save(T punishment) {
+        DBObject dbObject = convertToDBObject(punishment);
+        collection.save(dbObject);
+        punishment.setMongoId((ObjectId) dbObject.get("_id"));
+        PunishmentStore.getInstance().save(storeType, dbObject);
     }
 
     @Override
@@ -114,7 +189,7 @@ abstract class BaseMongoManager<T extends MongoPunishment> implements Punishment
     protected void throwJoinExceptionFor(T activePunishmentFor) throws CPlayerJoinException {
         PrettyTime prettyTime = new PrettyTime();
         String timeSince = prettyTime.format(activePunishmentFor.getDateIssued());
-        String expires = (activePunishmentFor instanceof TimedPunishment) ? prettyTime.format(new Date(activePunishmentFor.getDateIssued().getTime() + (((TimedPunishment) activePunishmentFor).getLengthInSeconds() * 1000))) : "never";
+        String expires = (activePunishmentFor instanceof MongoTemporaryPunishment) ? prettyTime.format(new Date(((MongoTemporaryPunishment) activePunishmentFor).getExpiresAt())) : "never";
         throw new CPlayerJoinException(Core.getModule(Punishments.class).getFormat("disconnect-message-perm", false,
                 new String[]{"<type>", activePunishmentFor.getClass().getSimpleName()},
                 new String[]{"<reason>", activePunishmentFor.getMessage()},
@@ -127,9 +202,10 @@ abstract class BaseMongoManager<T extends MongoPunishment> implements Punishment
     @Override
     public void revokePunishment(T punishment) {
         punishment.setActive(false);
-        DBObject dbObject = convertToDBObject(punishment);
-        collection.save(dbObject);
-        if (punishment.getTarget() instanceof CPlayer) onRevoke((CPlayer) punishment.getTarget(), punishment);
+        save(punishment);
+        //Without looking the target up, if they're not online there's nothing to tell them
+        Player onlinePlayer = Bukkit.getPlayer(punishment.getTargetUUID());
+        if (onlinePlayer != null) onRevoke(Core.getOnlinePlayer(onlinePlayer), punishment);
     }
 
     @Override
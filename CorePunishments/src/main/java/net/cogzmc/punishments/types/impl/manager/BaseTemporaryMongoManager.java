@@ -1,29 +1,51 @@
 package net.cogzmc.punishments.types.impl.manager;
 
+import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 import net.cogzmc.core.Core;
 import net.cogzmc.core.player.COfflinePlayer;
 import net.cogzmc.core.player.CPlayer;
+import net.cogzmc.punishments.Punishments;
 import net.cogzmc.punishments.TimedPunishmentManager;
 import net.cogzmc.punishments.types.PunishmentException;
 import net.cogzmc.punishments.types.impl.TargetOnlinesOnly;
 import net.cogzmc.punishments.types.impl.model.MongoTemporaryPunishment;
 import org.bson.types.ObjectId;
+import org.bukkit.Bukkit;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
 import static net.cogzmc.core.player.mongo.MongoUtils.getValueFrom;
 
+/**
+ * Temporary punishments are expired by an {@link ExpiryWheel}, rather than by checking their dates whenever they're read.
+ *
+ * Every active punishment of this type is scheduled on startup from its indexed {@code expires_at} field, along with
+ * any loaded later, and the wheel is turned once a second. Whatever runs out in a turn is marked inactive with one
+ * update.
+ */
 abstract class BaseTemporaryMongoManager<T extends MongoTemporaryPunishment> extends BaseMongoManager<T> implements TimedPunishmentManager<T> {
+    private final ExpiryWheel<ObjectId> expiryWheel = new ExpiryWheel<>(System.currentTimeMillis());
+
     public BaseTemporaryMongoManager(Class<T> clazz) {
         super(clazz);
+        collection.createIndex(new BasicDBObject(PunishmentKey.ACTIVE.toString(), 1).append(PunishmentKey.EXPIRES_AT.toString(), 1));
+        scheduleActivePunishments();
+        Bukkit.getScheduler().runTaskTimer(Core.getModule(Punishments.class), new Runnable() {
+            @Override
+            public void run() {
+                expireDue();
+            }
+        }, 20L, 20L);
     }
 
-    abstract T createNewPunishment(ObjectId id, COfflinePlayer target, String reason, COfflinePlayer issuer, Boolean active, Date issued, Integer lengthInSeconds);
+    abstract T createNewPunishment(ObjectId id, UUID target, String reason, UUID issuer, Boolean active, Date issued, Integer lengthInSeconds);
 
     @Override
-    T createNewPunishment(ObjectId objectId, COfflinePlayer target, String reason, COfflinePlayer issuer, Date issued, Boolean active) {
+    T createNewPunishment(ObjectId objectId, UUID target, String reason, UUID issuer, Date issued, Boolean active) {
         throw new UnsupportedOperationException("This is a temporary punishment manager!");
     }
 
@@ -31,6 +53,7 @@ abstract class BaseTemporaryMongoManager<T extends MongoTemporaryPunishment> ext
     DBObject convertToDBObject(T object) {
         DBObject dbObject = super.convertToDBObject(object);
         dbObject.put(PunishmentKey.LENGTH.toString(), object.getLengthInSeconds());
+        dbObject.put(PunishmentKey.EXPIRES_AT.toString(), new Date(object.getExpiresAt()));
         return dbObject;
     }
 
@@ -43,7 +66,7 @@ abstract class BaseTemporaryMongoManager<T extends MongoTemporaryPunishment> ext
         Date issued = getValueFrom(object, PunishmentKey.DATE_ISSUED, Date.class);
         Integer length = getValueFrom(object, PunishmentKey.LENGTH, Integer.class);
         ObjectId id = getValueFrom(object, "_id", ObjectId.class);
-        return createNewPunishment(id, Core.getOfflinePlayerByUUID(target), reason, Core.getOfflinePlayerByUUID(issuer), active, issued, length);
+        return createNewPunishment(id, target, reason, issuer, active, issued, length);
     }
 
     @Override
@@ -51,15 +74,16 @@ abstract class BaseTemporaryMongoManager<T extends MongoTemporaryPunishment> ext
         if (getActivePunishmentFor(target) != null) throw new PunishmentException("You cannot punish the same player twice!");
         if (!(target instanceof CPlayer) && punishmentClazz.isAnnotationPresent(TargetOnlinesOnly.class)) throw new PunishmentException("You can only punish online players with this!");
         T newPunishment = createNewPunishment(target, reason, issuer, lengthInSeconds);
-        DBObject dbObject = convertToDBObject(newPunishment);
-        newPunishment.setMongoId((ObjectId) dbObject.get("_id"));
-        collection.save(dbObject);
+        save(newPunishment);
+        expiryWheel.schedule(newPunishment.getMongoId(), newPunishment.getExpiresAt());
         if (target instanceof CPlayer) onPunish((CPlayer) target, newPunishment);
         return newPunishment;
     }
 
     private T createNewPunishment(COfflinePlayer target, String reason, COfflinePlayer issuer, Integer lengthInSeconds) {
-        return createNewPunishment(null, target, reason, issuer, true, new Date(), lengthInSeconds);
+        T punishment = createNewPunishment(null, target.getUniqueIdentifier(), reason, issuer.getUniqueIdentifier(), true, new Date(), lengthInSeconds);
+        punishment.setPlayers(target, issuer);
+        return punishment;
     }
 
 
@@ -71,15 +95,55 @@ abstract class BaseTemporaryMongoManager<T extends MongoTemporaryPunishment> ext
     @Override
     public T getActivePunishmentFor(COfflinePlayer target) {
         T activePunishmentFor = super.getActivePunishmentFor(target);
-        if (activePunishmentFor == null) return null;
+        //Normally already on the wheel, dates are only checked for ones this server hasn't seen yet (like those issued elsewhere)
+        if (activePunishmentFor == null || expiryWheel.isScheduled(activePunishmentFor.getMongoId())) return activePunishmentFor;
         if (isExpired(activePunishmentFor)) {
             revokePunishment(activePunishmentFor);
             return null;
         }
+        expiryWheel.schedule(activePunishmentFor.getMongoId(), activePunishmentFor.getExpiresAt());
         return activePunishmentFor;
     }
 
+    @Override
+    public void revokePunishment(T punishment) {
+        expiryWheel.cancel(punishment.getMongoId());
+        super.revokePunishment(punishment);
+    }
+
     public boolean isExpired(T punish) {
-        return (punish.getDateIssued().getTime() + (punish.getLengthInSeconds() * 1000)) < System.currentTimeMillis();
+        return punish.getExpiresAt() < System.currentTimeMillis();
+    }
+
+    private void scheduleActivePunishments() {
+        Date now = new Date();
+        //Anything that ran out while no server was running is flipped with one update
+        collection.update(new BasicDBObject(PunishmentKey.ACTIVE.toString(), true).append(PunishmentKey.EXPIRES_AT.toString(), new BasicDBObject("$lte", now)),
+                new BasicDBObject("$set", new BasicDBObject(PunishmentKey.ACTIVE.toString(), false)), false, true);
+        PunishmentStore.getInstance().expireOverdue(storeType, now);
+        //Punishments from before expires_at was stored get it now
+        for (DBObject dbObject : collection.find(new BasicDBObject(PunishmentKey.ACTIVE.toString(), true).append(PunishmentKey.EXPIRES_AT.toString(), new BasicDBObject("$exists", false)))) {
+            T punishment = getFromDBObject(dbObject);
+            if (isExpired(punishment)) punishment.setActive(false);
+            save(punishment);
+        }
+        for (DBObject dbObject : PunishmentStore.getInstance().getAllActive(storeType)) {
+            T punishment = getFromDBObject(dbObject);
+            expiryWheel.schedule(punishment.getMongoId(), punishment.getExpiresAt());
+        }
+    }
+
+    private void expireDue() {
+        final List<ObjectId> expired = expiryWheel.advance(System.currentTimeMillis());
+        if (expired.size() == 0) return;
+        deactivateLoaded(expired);
+        Bukkit.getScheduler().runTaskAsynchronously(Core.getModule(Punishments.class), new Runnable() {
+            @Override
+            public void run() {
+                collection.update(new BasicDBObject("_id", new BasicDBObject("$in", new ArrayList<>(expired))),
+                        new BasicDBObject("$set", new BasicDBObject(PunishmentKey.ACTIVE.toString(), false)), false, true);
+                PunishmentStore.getInstance().setInactive(expired);
+            }
+        });
     }
 }
@@ -0,0 +1,83 @@
+package net.cogzmc.punishments.types.impl.manager;
+
+import java.util.*;
+
+/**
+ * A hashed timing wheel. Keys are put in the slot for the second they expire in, along with how many more turns of the
+ * wheel they have to wait, so scheduling and cancelling are O(1) and each {@link #advance(long)} only looks at the
+ * slots it passes over.
+ */
+final class ExpiryWheel<K> {
+    private final static int SLOTS = 512;
+    private final static long TICK_MILLIS = 1000;
+
+    private static final class Entry<K> {
+        private final K key;
+        private long rounds;
+
+        private Entry(K key, long rounds) {
+            this.key = key;
+            this.rounds = rounds;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private final List<Entry<K>>[] slots = new List[SLOTS];
+    private final Map<K, Entry<K>> entries = new HashMap<>();
+    private final Map<K, Integer> entrySlots = new HashMap<>();
+    private long currentTick;
+
+    ExpiryWheel(long nowMillis) {
+        for (int x = 0; x < SLOTS; x++) slots[x] = new ArrayList<>();
+        currentTick = nowMillis / TICK_MILLIS;
+    }
+
+    /**
+     * Schedules the key to expire at the given time, replacing any time it had before. Times that have already passed
+     * expire on the next {@link #advance(long)}.
+     */
+    synchronized void schedule(K key, long expiresAtMillis) {
+        cancel(key);
+        long ticks = Math.max(1, expiresAtMillis / TICK_MILLIS - currentTick);
+        int slot = (int) ((currentTick + ticks) % SLOTS);
+        Entry<K> entry = new Entry<>(key, (ticks - 1) / SLOTS);
+        slots[slot].add(entry);
+        entries.put(key, entry);
+        entrySlots.put(key, slot);
+    }
+
+    synchronized boolean isScheduled(K key) {
+        return entries.containsKey(key);
+    }
+
+    synchronized void cancel(K key) {
+        Entry<K> entry = entries.remove(key);
+        if (entry == null) return;
+        slots[entrySlots.remove(key)].remove(entry);
+    }
+
+    /**
+     * Turns the wheel up to the current time.
+     * @return Every key that expired since the last call, in the order they expired.
+     */
+    synchronized List<K> advance(long nowMillis) {
+        List<K> expired = new ArrayList<>();
+        long targetTick = nowMillis / TICK_MILLIS;
+        while (currentTick < targetTick) {
+            currentTick++;
+            Iterator<Entry<K>> iterator = slots[(int) (currentTick % SLOTS)].iterator();
+            while (iterator.hasNext()) {
+                Entry<K> entry = iterator.next();
+                if (entry.rounds > 0) {
+                    entry.rounds--;
+                    continue;
+                }
+                iterator.remove();
+                entries.remove(entry.key);
+                entrySlots.remove(entry.key);
+                expired.add(entry.key);
+            }
+        }
+        return expired;
+    }
+}
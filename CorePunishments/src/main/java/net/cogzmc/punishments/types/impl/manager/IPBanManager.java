@@ -1,21 +1,38 @@
 package net.cogzmc.punishments.types.impl.manager;
 
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
 import net.cogzmc.core.Core;
 import net.cogzmc.core.player.COfflinePlayer;
 import net.cogzmc.core.player.CPlayer;
 import net.cogzmc.core.player.CPlayerJoinException;
+import net.cogzmc.punishments.types.PunishmentException;
 import net.cogzmc.punishments.types.impl.model.IPBan;
+import net.cogzmc.punishments.types.impl.model.MongoPunishment;
 import org.bson.types.ObjectId;
+import org.bukkit.Bukkit;
 
 import java.net.InetAddress;
-import java.util.Date;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Every active IP ban is kept in memory, with the addresses and ranges it covers indexed in an {@link AddressTrie}, so
+ * checking a login is a single lookup without touching the database. The index is loaded on startup and kept in step
+ * across servers with {@link IPBanNetCommand}s.
+ */
 public final class IPBanManager extends BaseMongoManager<IPBan> {
+    private final AddressTrie<ObjectId> bannedAddresses = new AddressTrie<>();
+    private final Map<ObjectId, IPBan> activeBans = new ConcurrentHashMap<>();
+
     public IPBanManager() {
         super(IPBan.class);
+        loadIndex();
+        if (Core.getNetworkManager() != null) Core.getNetworkManager().registerNetCommandHandler(new IPBanNetCommandHandler(this), IPBanNetCommand.class);
     }
+
     @Override
-    IPBan createNewPunishment(ObjectId objectId, COfflinePlayer target, String reason, COfflinePlayer issuer, Date issued, Boolean active) {
+    IPBan createNewPunishment(ObjectId objectId, UUID target, String reason, UUID issuer, Date issued, Boolean active) {
         return new IPBan(objectId, target, reason, issuer, active, issued);
     }
 
@@ -25,27 +42,125 @@ public final class IPBanManager extends BaseMongoManager<IPBan> {
     }
 
     @Override
-    public void onPlayerLogin(CPlayer player, InetAddress address) throws CPlayerJoinException {
-        for (COfflinePlayer cOfflinePlayer : Core.getPlayerManager().getOfflinePlayersForIP(address)) {
-            IPBan activePunishmentFor = getActivePunishmentFor(cOfflinePlayer);
-            if (activePunishmentFor != null) throwJoinExceptionFor(activePunishmentFor);
+    DBObject convertToDBObject(IPBan punishment) {
+        if (punishment.getAddresses() == null) {
+            COfflinePlayer target = punishment.getTarget();
+            punishment.setAddresses(target == null ? new ArrayList<String>() : new ArrayList<>(target.getKnownIPAddresses()));
         }
+        DBObject dbObject = super.convertToDBObject(punishment);
+        dbObject.put(PunishmentKey.ADDRESSES.toString(), punishment.getAddresses());
+        return dbObject;
+    }
+
+    @Override
+    IPBan getFromDBObject(DBObject object) {
+        IPBan ipBan = super.getFromDBObject(object);
+        Object addresses = object.get(PunishmentKey.ADDRESSES.toString());
+        if (addresses instanceof List) {
+            List<String> addressStrings = new ArrayList<>();
+            for (Object address : (List) addresses) addressStrings.add(String.valueOf(address));
+            ipBan.setAddresses(addressStrings);
+        }
+        return ipBan;
+    }
+
+    @Override
+    public void onPlayerLogin(CPlayer player, InetAddress address) throws CPlayerJoinException {
+        ObjectId banId = bannedAddresses.lookup(address);
+        IPBan ipBan = banId == null ? null : activeBans.get(banId);
+        if (ipBan != null) throwJoinExceptionFor(ipBan);
         super.onPlayerLogin(player, address);
     }
 
     @Override
-    void onPunish(CPlayer player, IPBan punishment) {
+    public IPBan punish(COfflinePlayer target, String reason, COfflinePlayer issuer) throws PunishmentException {
+        IPBan ipBan = super.punish(target, reason, issuer);
+        index(ipBan);
+        kickBannedPlayers(ipBan);
+        sendChange(ipBan.getMongoId(), true);
+        return ipBan;
+    }
+
+    @Override
+    public void revokePunishment(IPBan punishment) {
+        super.revokePunishment(punishment);
+        unindex(punishment.getMongoId());
+        sendChange(punishment.getMongoId(), false);
+    }
+
+    /* Called from the network thread when another server bans or unbans someone */
+    void onRemoteChange(ObjectId id, Boolean active) {
+        if (!Boolean.TRUE.equals(active)) {
+            unindex(id);
+            return;
+        }
+        DBObject dbObject = collection.findOne(new BasicDBObject("_id", id));
+        if (dbObject == null) return;
+        final IPBan ipBan = getFromDBObject(dbObject);
+        if (!ipBan.isActive()) return;
+        index(ipBan);
+        Bukkit.getScheduler().runTask(Core.getInstance(), new Runnable() {
+            @Override
+            public void run() {
+                kickBannedPlayers(ipBan);
+            }
+        });
+    }
+
+    private void loadIndex() {
+        List<IPBan> ipBans = new ArrayList<>();
+        List<IPBan> withoutAddresses = new ArrayList<>();
+        for (DBObject dbObject : PunishmentStore.getInstance().getAllActive(storeType)) {
+            IPBan ipBan = getFromDBObject(dbObject);
+            ipBans.add(ipBan);
+            if (ipBan.getAddresses() == null) withoutAddresses.add(ipBan);
+        }
+        //Bans from before addresses were stored get them from their targets, looked up all at once, and saved for next time
+        MongoPunishment.resolvePlayers(withoutAddresses);
+        for (IPBan ipBan : withoutAddresses) save(ipBan);
+        for (IPBan ipBan : ipBans) index(ipBan);
+    }
+
+    private void index(IPBan ipBan) {
+        activeBans.put(ipBan.getMongoId(), ipBan);
+        for (String address : ipBan.getAddresses()) {
+            try {
+                bannedAddresses.add(address, ipBan.getMongoId());
+            } catch (IllegalArgumentException e) {
+                Core.getInstance().getLogger().warning("Skipping invalid address " + address + " on IP ban " + ipBan.getMongoId());
+            }
+        }
+    }
+
+    private void unindex(ObjectId id) {
+        IPBan ipBan = activeBans.remove(id);
+        if (ipBan == null) return;
+        for (String address : ipBan.getAddresses()) {
+            try {
+                bannedAddresses.remove(address, id);
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+    }
+
+    private void kickBannedPlayers(IPBan ipBan) {
         String message = null;
         try {
-            throwJoinExceptionFor(punishment);
+            throwJoinExceptionFor(ipBan);
         } catch (CPlayerJoinException e) {
             message = e.getDisconectMessage();
         }
-        player.kickPlayer(message);
+        List<CPlayer> banned = new ArrayList<>();
         for (CPlayer cPlayer : Core.getPlayerManager()) {
-            if (!player.equals(cPlayer) && player.getKnownIPAddresses().contains(cPlayer.getAddress().getHostAddress())) {
-                cPlayer.kickPlayer(message);
+            if (cPlayer.getUniqueIdentifier().equals(ipBan.getTargetUUID()) || bannedAddresses.lookup(cPlayer.getAddress()) != null) {
+                banned.add(cPlayer);
             }
         }
+        for (CPlayer cPlayer : banned) cPlayer.kickPlayer(message); //Not while iterating, kicking them takes them out of the player manager
+    }
+
+    private static void sendChange(ObjectId id, boolean active) {
+        if (Core.getNetworkManager() == null) return;
+        Core.getNetworkManager().sendMassNetCommand(new IPBanNetCommand(id.toString(), active));
     }
 }
@@ -0,0 +1,18 @@
+package net.cogzmc.punishments.types.impl.manager;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import net.cogzmc.core.network.NetCommand;
+import net.cogzmc.core.network.NetCommandField;
+
+/**
+ * Sent when an IP ban is issued or revoked, so every server can update its {@link IPBanManager} index.
+ */
+@AllArgsConstructor
+@Data
+public final class IPBanNetCommand implements NetCommand {
+    public IPBanNetCommand() {
+    }
+    @NetCommandField private String punishmentId;
+    @NetCommandField private Boolean active;
+}
@@ -0,0 +1,18 @@
+package net.cogzmc.punishments.types.impl.manager;
+
+import lombok.Data;
+import net.cogzmc.core.Core;
+import net.cogzmc.core.network.NetCommandHandler;
+import net.cogzmc.core.network.NetworkServer;
+import org.bson.types.ObjectId;
+
+@Data
+final class IPBanNetCommandHandler implements NetCommandHandler<IPBanNetCommand> {
+    private final IPBanManager manager;
+
+    @Override
+    public void handleNetCommand(NetworkServer sender, IPBanNetCommand netCommand) {
+        if (sender.equals(Core.getNetworkManager().getThisServer())) return;
+        manager.onRemoteChange(new ObjectId(netCommand.getPunishmentId()), netCommand.getActive());
+    }
+}
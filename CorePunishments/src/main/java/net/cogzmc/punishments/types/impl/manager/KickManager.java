@@ -1,13 +1,13 @@
 package net.cogzmc.punishments.types.impl.manager;
 
 import net.cogzmc.core.Core;
-import net.cogzmc.core.player.COfflinePlayer;
 import net.cogzmc.core.player.CPlayer;
 import net.cogzmc.punishments.Punishments;
 import net.cogzmc.punishments.types.impl.model.Kick;
 import org.bson.types.ObjectId;
 
 import java.util.Date;
+import java.util.UUID;
 
 public final class KickManager extends BaseMongoManager<Kick> {
     public KickManager() {
@@ -15,7 +15,7 @@ public final class KickManager extends BaseMongoManager<Kick> {
     }
 
     @Override
-    Kick createNewPunishment(ObjectId objectId, COfflinePlayer target, String reason, COfflinePlayer issuer, Date issued, Boolean active) {
+    Kick createNewPunishment(ObjectId objectId, UUID target, String reason, UUID issuer, Date issued, Boolean active) {
         return new Kick(objectId, target, reason, issuer, active, issued);
     }
 
@@ -1,7 +1,6 @@
 package net.cogzmc.punishments.types.impl.manager;
 
 import net.cogzmc.core.Core;
-import net.cogzmc.core.player.COfflinePlayer;
 import net.cogzmc.core.player.CPlayer;
 import net.cogzmc.punishments.Punishments;
 import net.cogzmc.punishments.types.impl.model.Mute;
@@ -12,11 +11,10 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
 
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.UUID;
 
 public final class MuteManager extends BaseMongoManager<Mute> implements Listener {
-    private final Set<CPlayer> mutedPlayers = new HashSet<>();
+    private final MuteSnapshot mutedPlayers = new MuteSnapshot();
     private final Punishments module = Core.getModule(Punishments.class);
 
     public MuteManager() {
@@ -25,13 +23,13 @@ public final class MuteManager extends BaseMongoManager<Mute> implements Listene
     }
 
     @Override
-    Mute createNewPunishment(ObjectId objectId, COfflinePlayer target, String reason, COfflinePlayer issuer, Date issued, Boolean active) {
+    Mute createNewPunishment(ObjectId objectId, UUID target, String reason, UUID issuer, Date issued, Boolean active) {
         return new Mute(objectId, target, reason, issuer, active, issued);
     }
 
     @Override
     void onPunish(CPlayer player, Mute punishment) {
-        mutedPlayers.add(player);
+        mutedPlayers.put(player.getUniqueIdentifier(), MuteSnapshot.NEVER);
         player.sendMessage(module.getFormat("new-mute",
                 new String[]{"<reason>", punishment.getMessage()},
                 new String[]{"<issuer>", punishment.getIssuer().getName()},
@@ -46,22 +44,22 @@ public final class MuteManager extends BaseMongoManager<Mute> implements Listene
     @Override
     void onJoin(CPlayer player, Mute punishment) {
         player.sendMessage(Core.getModule(Punishments.class).getFormat("muted", new String[]{"<expires>", "never"}));
-        mutedPlayers.add(player);
+        mutedPlayers.put(player.getUniqueIdentifier(), MuteSnapshot.NEVER);
     }
 
     @Override
     void onLeave(CPlayer player, Mute punishment) {
-        mutedPlayers.remove(player);
+        mutedPlayers.remove(player.getUniqueIdentifier());
     }
 
     @Override
     void onRevoke(CPlayer player, Mute punishment) {
-        mutedPlayers.remove(player);
+        mutedPlayers.remove(player.getUniqueIdentifier());
     }
 
     @EventHandler(priority = EventPriority.LOWEST)
     public void onPlayerChat(AsyncPlayerChatEvent event) {
-        if (!mutedPlayers.contains(Core.getOnlinePlayer(event.getPlayer()))) return;
+        if (mutedPlayers.getMutedUntil(event.getPlayer().getUniqueId(), System.currentTimeMillis()) == 0) return;
         event.setCancelled(true);
         event.getPlayer().sendMessage(module.getFormat("muted", new String[]{"<expires>", "never"}));
     }
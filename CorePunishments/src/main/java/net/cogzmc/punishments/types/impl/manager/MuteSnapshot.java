@@ -0,0 +1,40 @@
+package net.cogzmc.punishments.types.impl.manager;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The players muted on this server and when their mutes run out, for checking on the chat thread.
+ *
+ * Changes (join, leave, punish and revoke) copy the map and publish the copy, so a check is a single read of a
+ * volatile map that is never modified after it's published: it doesn't lock, block, or allocate.
+ */
+final class MuteSnapshot {
+    final static long NEVER = Long.MAX_VALUE;
+
+    private volatile Map<UUID, Long> mutedUntil = Collections.emptyMap();
+
+    synchronized void put(UUID player, long expiresAt) {
+        Map<UUID, Long> copy = new HashMap<>(mutedUntil);
+        copy.put(player, expiresAt);
+        mutedUntil = copy;
+    }
+
+    synchronized void remove(UUID player) {
+        if (!mutedUntil.containsKey(player)) return;
+        Map<UUID, Long> copy = new HashMap<>(mutedUntil);
+        copy.remove(player);
+        mutedUntil = copy;
+    }
+
+    /**
+     * @return When the player's mute runs out in epoch millis ({@link #NEVER} for permanent mutes), or {@code 0} if they
+     * are not muted at {@code now}.
+     */
+    long getMutedUntil(UUID player, long now) {
+        Long expiresAt = mutedUntil.get(player);
+        return expiresAt == null || expiresAt <= now ? 0 : expiresAt;
+    }
+}
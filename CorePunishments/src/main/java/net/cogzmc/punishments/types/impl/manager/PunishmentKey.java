@@ -6,7 +6,10 @@ public enum PunishmentKey {
     REASON("reason"),
     LENGTH("length"),
     DATE_ISSUED("issued_date"),
-    ACTIVE("active");
+    ACTIVE("active"),
+    TYPE("type"),
+    ADDRESSES("addresses"),
+    EXPIRES_AT("expires_at");
 
     private final String key;
 
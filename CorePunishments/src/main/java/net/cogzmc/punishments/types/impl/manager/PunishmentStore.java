@@ -0,0 +1,179 @@
+package net.cogzmc.punishments.types.impl.manager;
+
+import com.mongodb.*;
+import lombok.Getter;
+import net.cogzmc.core.Core;
+import net.cogzmc.core.player.mongo.CMongoDatabase;
+import org.bson.types.ObjectId;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import static net.cogzmc.core.player.mongo.MongoUtils.getValueFrom;
+
+/**
+ * One collection holding a copy of every punishment of every type, tagged with its type and indexed on
+ * {@code (target, active)}.
+ *
+ * The per type collections are still the source of truth, but anything asking "what is active for this player" asks
+ * here first, so a login is a single indexed query no matter how long the player's history is.
+ * {@link #prefetch(java.util.UUID)} runs that query once, and the managers read their part of the result until
+ * {@link #release(java.util.UUID)}.
+ *
+ * Every write goes through {@link #save(String, com.mongodb.DBObject)}, and on startup each type is reconciled with its
+ * own collection from where the last reconcile got to, so once a type is {@link #isReconciled(String) reconciled} what
+ * isn't here isn't active. Until then, managers check their own collection as well.
+ */
+public final class PunishmentStore {
+    private final static String COLLECTION_NAME = "punishments";
+    private final static String RECONCILED_COLLECTION_NAME = "punishments_reconciled";
+    private final static String RECONCILED_TO = "reconciled_to";
+    /* Punishments are stamped by the clock of the server that issued them, so a reconcile goes back a little further */
+    private final static long CLOCK_SKEW_MILLIS = 10 * 60 * 1000;
+    private final static int RECONCILE_BATCH_SIZE = 500;
+
+    @Getter private static PunishmentStore instance;
+
+    private final DBCollection collection;
+    private final DBCollection reconciledCollection;
+    private final Set<String> reconciledTypes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    /* Active punishments by type, loaded for players who are logging in right now */
+    private final Map<UUID, Map<String, DBObject>> prefetched = new ConcurrentHashMap<>();
+
+    public PunishmentStore() {
+        if (Core.getInstance().getCDatabase() == null || !(Core.getInstance().getCDatabase() instanceof CMongoDatabase))
+            throw new IllegalStateException("This is a mongo bean in a strange world! (You've used a mongo punishment system with a non-mongo DB");
+        collection = ((CMongoDatabase) Core.getInstance().getCDatabase()).getCollection(COLLECTION_NAME);
+        reconciledCollection = ((CMongoDatabase) Core.getInstance().getCDatabase()).getCollection(RECONCILED_COLLECTION_NAME);
+        collection.createIndex(new BasicDBObject(PunishmentKey.TARGET.toString(), 1).append(PunishmentKey.ACTIVE.toString(), 1));
+        collection.createIndex(new BasicDBObject(PunishmentKey.TYPE.toString(), 1));
+        collection.createIndex(new BasicDBObject(PunishmentKey.ACTIVE.toString(), 1).append(PunishmentKey.EXPIRES_AT.toString(), 1));
+        instance = this;
+    }
+
+    /**
+     * Loads every active punishment for the target in one query, to be used by all of the managers during their login
+     * checks.
+     * @param target The UUID of the player logging in.
+     */
+    public void prefetch(UUID target) {
+        Map<String, DBObject> active = new HashMap<>();
+        for (DBObject dbObject : collection.find(activeQuery(target))) {
+            String type = getValueFrom(dbObject, PunishmentKey.TYPE, String.class);
+            if (!active.containsKey(type)) active.put(type, dbObject);
+        }
+        prefetched.put(target, active);
+    }
+
+    /**
+     * Forgets what {@link #prefetch(java.util.UUID)} loaded, once the login checks are done.
+     * @param target The UUID of the player who was logging in.
+     */
+    public void release(UUID target) {
+        prefetched.remove(target);
+    }
+
+    DBObject getActive(UUID target, String type) {
+        Map<String, DBObject> active = prefetched.get(target);
+        if (active != null) return active.get(type);
+        return collection.findOne(activeQuery(target).append(PunishmentKey.TYPE.toString(), type));
+    }
+
+    List<DBObject> getActive(Collection<UUID> targets, String type) {
+        List<String> targetIds = new ArrayList<>();
+        for (UUID target : targets) targetIds.add(target.toString());
+        BasicDBObject query = new BasicDBObject(PunishmentKey.TARGET.toString(), new BasicDBObject("$in", targetIds))
+                .append(PunishmentKey.ACTIVE.toString(), true)
+                .append(PunishmentKey.TYPE.toString(), type);
+        List<DBObject> active = new ArrayList<>();
+        for (DBObject dbObject : collection.find(query)) active.add(dbObject);
+        return active;
+    }
+
+    List<DBObject> getAllActive(String type) {
+        List<DBObject> active = new ArrayList<>();
+        for (DBObject dbObject : collection.find(new BasicDBObject(PunishmentKey.TYPE.toString(), type).append(PunishmentKey.ACTIVE.toString(), true))) {
+            active.add(dbObject);
+        }
+        return active;
+    }
+
+    void setInactive(Collection<ObjectId> ids) {
+        collection.update(new BasicDBObject("_id", new BasicDBObject("$in", new ArrayList<>(ids))),
+                new BasicDBObject("$set", new BasicDBObject(PunishmentKey.ACTIVE.toString(), false)), false, true);
+    }
+
+    void expireOverdue(String type, Date now) {
+        collection.update(new BasicDBObject(PunishmentKey.ACTIVE.toString(), true)
+                        .append(PunishmentKey.EXPIRES_AT.toString(), new BasicDBObject("$lte", now))
+                        .append(PunishmentKey.TYPE.toString(), type),
+                new BasicDBObject("$set", new BasicDBObject(PunishmentKey.ACTIVE.toString(), false)), false, true);
+    }
+
+    /* Keeps the copy in step with the type's own collection. The object must already have its _id. */
+    void save(String type, DBObject object) {
+        BasicDBObject copy = new BasicDBObject(object.toMap());
+        copy.put(PunishmentKey.TYPE.toString(), type);
+        collection.save(copy);
+        Map<String, DBObject> active = prefetched.get(UUID.fromString(getValueFrom(copy, PunishmentKey.TARGET, String.class)));
+        if (active == null) return;
+        if (Boolean.TRUE.equals(getValueFrom(copy, PunishmentKey.ACTIVE, Boolean.class))) active.put(type, copy);
+        else active.remove(type);
+    }
+
+    /**
+     * Whether this type's copies have been reconciled with its own collection since startup, so a missing copy means
+     * the player has nothing active of this type.
+     */
+    boolean isReconciled(String type) {
+        return reconciledTypes.contains(type);
+    }
+
+    /*
+     * Brings this type's copies in line with its own collection. Only punishments issued since the last reconcile are
+     * copied, and copies that are still active are checked against the type's collection a batch at a time, which
+     * catches revokes by servers that don't know about the store. If it fails, the type isn't trusted until next time.
+     */
+    void reconcile(String type, DBCollection source) {
+        try {
+            Date startedAt = new Date();
+            DBObject marker = reconciledCollection.findOne(new BasicDBObject("_id", type));
+            BasicDBObject newQuery = new BasicDBObject();
+            if (marker != null) {
+                Date reconciledTo = getValueFrom(marker, RECONCILED_TO, Date.class);
+                newQuery.append("_id", new BasicDBObject("$gte", new ObjectId(new Date(reconciledTo.getTime() - CLOCK_SKEW_MILLIS))));
+            }
+            for (DBObject dbObject : source.find(newQuery)) save(type, dbObject);
+            //And anything revoked in the type's collection, but not here
+            DBCursor active = collection.find(new BasicDBObject(PunishmentKey.TYPE.toString(), type).append(PunishmentKey.ACTIVE.toString(), true), new BasicDBObject("_id", 1));
+            try {
+                List<ObjectId> batch = new ArrayList<>(RECONCILE_BATCH_SIZE);
+                while (active.hasNext()) {
+                    batch.add(getValueFrom(active.next(), "_id", ObjectId.class));
+                    if (batch.size() < RECONCILE_BATCH_SIZE && active.hasNext()) continue;
+                    setInactiveUnlessActiveIn(source, batch);
+                    batch.clear();
+                }
+            } finally {
+                active.close();
+            }
+            reconciledCollection.save(new BasicDBObject("_id", type).append(RECONCILED_TO, startedAt));
+            reconciledTypes.add(type);
+        } catch (MongoException e) {
+            Core.getInstance().getLogger().log(Level.SEVERE, "Could not reconcile the punishment store for " + type + ", its own collection will be checked as well", e);
+        }
+    }
+
+    private void setInactiveUnlessActiveIn(DBCollection source, List<ObjectId> ids) {
+        Set<ObjectId> revoked = new HashSet<>(ids);
+        for (DBObject dbObject : source.find(new BasicDBObject("_id", new BasicDBObject("$in", ids)).append(PunishmentKey.ACTIVE.toString(), true), new BasicDBObject("_id", 1))) {
+            revoked.remove(getValueFrom(dbObject, "_id", ObjectId.class));
+        }
+        if (revoked.size() > 0) setInactive(revoked);
+    }
+
+    private static BasicDBObject activeQuery(UUID target) {
+        return new BasicDBObject(PunishmentKey.TARGET.toString(), target.toString()).append(PunishmentKey.ACTIVE.toString(), true);
+    }
+}
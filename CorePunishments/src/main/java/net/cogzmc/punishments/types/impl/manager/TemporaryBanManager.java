@@ -1,7 +1,6 @@
 package net.cogzmc.punishments.types.impl.manager;
 
 import net.cogzmc.core.Core;
-import net.cogzmc.core.player.COfflinePlayer;
 import net.cogzmc.core.player.CPlayer;
 import net.cogzmc.punishments.Punishments;
 import net.cogzmc.punishments.types.impl.model.TemporaryBan;
@@ -9,6 +8,7 @@ import org.bson.types.ObjectId;
 import org.ocpsoft.prettytime.PrettyTime;
 
 import java.util.Date;
+import java.util.UUID;
 
 public final class TemporaryBanManager extends BaseTemporaryMongoManager<TemporaryBan> {
     public TemporaryBanManager() {
@@ -16,7 +16,7 @@ public final class TemporaryBanManager extends BaseTemporaryMongoManager<Tempora
     }
 
     @Override
-    TemporaryBan createNewPunishment(ObjectId id, COfflinePlayer target, String reason, COfflinePlayer issuer, Boolean active, Date issued, Integer lengthInSeconds) {
+    TemporaryBan createNewPunishment(ObjectId id, UUID target, String reason, UUID issuer, Boolean active, Date issued, Integer lengthInSeconds) {
         return new TemporaryBan(id, target, reason, issuer, active, issued, lengthInSeconds);
     }
 
@@ -33,7 +33,7 @@ public final class TemporaryBanManager extends BaseTemporaryMongoManager<Tempora
                 new String[]{"<reason>", activePunishmentFor.getMessage()},
                 new String[]{"<issuer>", activePunishmentFor.getIssuer().getName()},
                 new String[]{"<issued>", formatter.format(activePunishmentFor.getDateIssued())},
-                new String[]{"<expires>", "in " + formatter.format(new Date(activePunishmentFor.getDateIssued().getTime() + (activePunishmentFor.getLengthInSeconds() * 1000)))}
+                new String[]{"<expires>", "in " + formatter.format(new Date(activePunishmentFor.getExpiresAt()))}
         ));
     }
 }
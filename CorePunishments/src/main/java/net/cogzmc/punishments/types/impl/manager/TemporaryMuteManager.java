@@ -1,7 +1,6 @@
 package net.cogzmc.punishments.types.impl.manager;
 
 import net.cogzmc.core.Core;
-import net.cogzmc.core.player.COfflinePlayer;
 import net.cogzmc.core.player.CPlayer;
 import net.cogzmc.punishments.Punishments;
 import net.cogzmc.punishments.types.impl.model.TemporaryMute;
@@ -13,11 +12,10 @@ import org.bukkit.event.player.AsyncPlayerChatEvent;
 import org.ocpsoft.prettytime.PrettyTime;
 
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.UUID;
 
 public final class TemporaryMuteManager extends BaseTemporaryMongoManager<TemporaryMute> implements Listener {
-    private final Set<CPlayer> mutedPlayers = new HashSet<>();
+    private final MuteSnapshot mutedPlayers = new MuteSnapshot();
     private final Punishments module = Core.getModule(Punishments.class);
 
     public TemporaryMuteManager() {
@@ -26,13 +24,13 @@ public final class TemporaryMuteManager extends BaseTemporaryMongoManager<Tempor
     }
 
     @Override
-    TemporaryMute createNewPunishment(ObjectId id, COfflinePlayer target, String reason, COfflinePlayer issuer, Boolean active, Date issued, Integer lengthInSeconds) {
+    TemporaryMute createNewPunishment(ObjectId id, UUID target, String reason, UUID issuer, Boolean active, Date issued, Integer lengthInSeconds) {
         return new TemporaryMute(id, target, reason, issuer, active, issued, lengthInSeconds);
     }
 
     @Override
     void onPunish(CPlayer player, TemporaryMute punishment) {
-        mutedPlayers.add(player);
+        mutedPlayers.put(player.getUniqueIdentifier(), punishment.getExpiresAt());
     }
 
     @Override
@@ -48,27 +46,27 @@ public final class TemporaryMuteManager extends BaseTemporaryMongoManager<Tempor
                 new String[]{"<reason>", punishment.getMessage()},
                 new String[]{"<issuer>", punishment.getIssuer().getName()},
                 new String[]{"<expires>",
-                        formatter.format(new Date(punishment.getLengthInSeconds()*1000 + punishment.getDateIssued().getTime()))}
+                        formatter.format(new Date(punishment.getExpiresAt()))}
         ));
-        mutedPlayers.add(player);
+        mutedPlayers.put(player.getUniqueIdentifier(), punishment.getExpiresAt());
     }
 
     @Override
     void onLeave(CPlayer player, TemporaryMute punishment) {
-        mutedPlayers.remove(player);
+        mutedPlayers.remove(player.getUniqueIdentifier());
     }
 
     @Override
     void onRevoke(CPlayer player, TemporaryMute punishment) {
-        mutedPlayers.remove(player);
+        mutedPlayers.remove(player.getUniqueIdentifier());
     }
 
     @EventHandler(priority = EventPriority.LOWEST)
     public void onPlayerChat(AsyncPlayerChatEvent event) {
-        if (!mutedPlayers.contains(Core.getOnlinePlayer(event.getPlayer()))) return;
+        long mutedUntil = mutedPlayers.getMutedUntil(event.getPlayer().getUniqueId(), System.currentTimeMillis());
+        if (mutedUntil == 0) return;
         event.setCancelled(true);
         PrettyTime formatter = new PrettyTime();
-        TemporaryMute punishment = getActivePunishmentFor(Core.getOnlinePlayer(event.getPlayer()));
-        event.getPlayer().sendMessage(module.getFormat("muted", new String[]{"<expires>", formatter.format(new Date(punishment.getLengthInSeconds() * 1000 + punishment.getDateIssued().getTime()))}));
+        event.getPlayer().sendMessage(module.getFormat("muted", new String[]{"<expires>", formatter.format(new Date(mutedUntil))}));
     }
 }
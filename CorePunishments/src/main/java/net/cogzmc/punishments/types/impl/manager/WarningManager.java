@@ -1,13 +1,13 @@
 package net.cogzmc.punishments.types.impl.manager;
 
 import net.cogzmc.core.Core;
-import net.cogzmc.core.player.COfflinePlayer;
 import net.cogzmc.core.player.CPlayer;
 import net.cogzmc.punishments.Punishments;
 import net.cogzmc.punishments.types.impl.model.Warning;
 import org.bson.types.ObjectId;
 
 import java.util.Date;
+import java.util.UUID;
 
 public final class WarningManager extends BaseMongoManager<Warning> {
     public WarningManager() {
@@ -15,7 +15,7 @@ public final class WarningManager extends BaseMongoManager<Warning> {
     }
 
     @Override
-    Warning createNewPunishment(ObjectId objectId, COfflinePlayer target, String reason, COfflinePlayer issuer, Date issued, Boolean active) {
+    Warning createNewPunishment(ObjectId objectId, UUID target, String reason, UUID issuer, Date issued, Boolean active) {
         return new Warning(objectId, target, reason, issuer, active, issued);
     }
 
@@ -1,14 +1,20 @@
 package net.cogzmc.punishments.types.impl.model;
 
 import lombok.EqualsAndHashCode;
-import net.cogzmc.core.player.COfflinePlayer;
+import lombok.Getter;
+import lombok.Setter;
 import org.bson.types.ObjectId;
 
 import java.util.Date;
+import java.util.List;
+import java.util.UUID;
 
 @EqualsAndHashCode(callSuper = true)
 public final class IPBan extends MongoPunishment {
-    public IPBan(ObjectId mongoId, COfflinePlayer target, String message, COfflinePlayer issuer, boolean active, Date dateIssued) {
+    /* Addresses and CIDR ranges (like 10.0.0.0/8) this ban covers, taken from the target's known addresses when it's issued */
+    @Getter @Setter private List<String> addresses;
+
+    public IPBan(ObjectId mongoId, UUID target, String message, UUID issuer, boolean active, Date dateIssued) {
         super(mongoId, target, message, issuer, active, dateIssued);
     }
 }
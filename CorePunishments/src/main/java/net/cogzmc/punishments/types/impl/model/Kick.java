@@ -1,16 +1,16 @@
 package net.cogzmc.punishments.types.impl.model;
 
 import lombok.EqualsAndHashCode;
-import net.cogzmc.core.player.COfflinePlayer;
 import net.cogzmc.punishments.types.impl.TargetOnlinesOnly;
 import org.bson.types.ObjectId;
 
 import java.util.Date;
+import java.util.UUID;
 
 @EqualsAndHashCode(callSuper = true)
 @TargetOnlinesOnly
 public final class Kick extends MongoPunishment {
-    public Kick(ObjectId objectId, COfflinePlayer target, String message, COfflinePlayer issuer, boolean revoked, Date dateIssued) {
+    public Kick(ObjectId objectId, UUID target, String message, UUID issuer, boolean revoked, Date dateIssued) {
         super(objectId, target, message, issuer, revoked, dateIssued);
     }
 
@@ -1,23 +1,81 @@
 package net.cogzmc.punishments.types.impl.model;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.EqualsAndHashCode;
-import lombok.NonNull;
+import lombok.*;
+import net.cogzmc.core.Core;
 import net.cogzmc.core.player.COfflinePlayer;
 import net.cogzmc.punishments.types.Punishment;
 import org.bson.types.ObjectId;
 
-import java.util.Date;
+import java.util.*;
 
-@EqualsAndHashCode
-@AllArgsConstructor
+@EqualsAndHashCode(exclude = {"target", "issuer"})
+@ToString(exclude = {"target", "issuer"})
 @Data
 public abstract class MongoPunishment implements Punishment {
     private ObjectId mongoId;
-    private final COfflinePlayer target;
+    private final UUID targetUUID;
     private final String message;
-    private final COfflinePlayer issuer;
+    private final UUID issuerUUID;
     @NonNull private boolean active;
     private final Date dateIssued;
+    /* Only looked up when something asks for them, see resolvePlayers for looking up a lot of them at once */
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private COfflinePlayer target;
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private COfflinePlayer issuer;
+
+    public MongoPunishment(ObjectId mongoId, UUID targetUUID, String message, UUID issuerUUID, boolean active, Date dateIssued) {
+        this.mongoId = mongoId;
+        this.targetUUID = targetUUID;
+        this.message = message;
+        this.issuerUUID = issuerUUID;
+        this.active = active;
+        this.dateIssued = dateIssued;
+    }
+
+    @Override
+    public COfflinePlayer getTarget() {
+        if (target == null) target = Core.getOfflinePlayerByUUID(targetUUID);
+        return target;
+    }
+
+    @Override
+    public COfflinePlayer getIssuer() {
+        if (issuer == null) issuer = Core.getOfflinePlayerByUUID(issuerUUID);
+        return issuer;
+    }
+
+    /**
+     * Sets the players this punishment is about, when the caller already has them, so they aren't looked up again.
+     * @param target The player the punishment is against, with the UUID {@link #getTargetUUID()}.
+     * @param issuer The player who issued the punishment, with the UUID {@link #getIssuerUUID()}.
+     */
+    public void setPlayers(COfflinePlayer target, COfflinePlayer issuer) {
+        this.target = target;
+        this.issuer = issuer;
+    }
+
+    /**
+     * Looks up the target and issuer of every punishment passed that hasn't got them yet, in one query, rather than
+     * two per punishment.
+     * @param punishments The punishments about to be displayed. Anything that isn't a {@link MongoPunishment} is skipped.
+     */
+    public static void resolvePlayers(Collection<? extends Punishment> punishments) {
+        Set<UUID> unresolved = new LinkedHashSet<>();
+        for (Punishment punishment : punishments) {
+            if (!(punishment instanceof MongoPunishment)) continue;
+            MongoPunishment mongoPunishment = (MongoPunishment) punishment;
+            if (mongoPunishment.target == null) unresolved.add(mongoPunishment.targetUUID);
+            if (mongoPunishment.issuer == null) unresolved.add(mongoPunishment.issuerUUID);
+        }
+        if (unresolved.size() == 0) return;
+        Map<UUID, COfflinePlayer> players = new HashMap<>();
+        for (COfflinePlayer player : Core.getPlayerManager().getOfflinePlayersByUUIDS(new ArrayList<>(unresolved))) {
+            players.put(player.getUniqueIdentifier(), player);
+        }
+        for (Punishment punishment : punishments) {
+            if (!(punishment instanceof MongoPunishment)) continue;
+            MongoPunishment mongoPunishment = (MongoPunishment) punishment;
+            if (mongoPunishment.target == null) mongoPunishment.target = players.get(mongoPunishment.targetUUID);
+            if (mongoPunishment.issuer == null) mongoPunishment.issuer = players.get(mongoPunishment.issuerUUID);
+        }
+    }
 }
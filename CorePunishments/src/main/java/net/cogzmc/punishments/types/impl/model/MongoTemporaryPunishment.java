@@ -3,20 +3,23 @@ package net.cogzmc.punishments.types.impl.model;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import net.cogzmc.core.model.ModelField;
-import net.cogzmc.core.player.COfflinePlayer;
 import net.cogzmc.punishments.types.TimedPunishment;
 import org.bson.types.ObjectId;
 
 import java.util.Date;
+import java.util.UUID;
 
 @EqualsAndHashCode(callSuper = true)
 @ModelField
 @Data
 public abstract class MongoTemporaryPunishment extends MongoPunishment implements TimedPunishment {
     public final Integer lengthInSeconds;
+    /* When this runs out, in milliseconds since the epoch */
+    private final long expiresAt;
 
-    public MongoTemporaryPunishment(ObjectId objectId, COfflinePlayer target, String message, COfflinePlayer issuer, boolean revoked, Date dateIssued, Integer lengthInSeconds) {
+    public MongoTemporaryPunishment(ObjectId objectId, UUID target, String message, UUID issuer, boolean revoked, Date dateIssued, Integer lengthInSeconds) {
         super(objectId, target, message, issuer, revoked, dateIssued);
         this.lengthInSeconds = lengthInSeconds;
+        this.expiresAt = dateIssued.getTime() + lengthInSeconds * 1000L;
     }
 }
@@ -1,14 +1,14 @@
 package net.cogzmc.punishments.types.impl.model;
 
 import lombok.EqualsAndHashCode;
-import net.cogzmc.core.player.COfflinePlayer;
 import org.bson.types.ObjectId;
 
 import java.util.Date;
+import java.util.UUID;
 
 @EqualsAndHashCode(callSuper = true)
 public final class Mute extends MongoPunishment {
-    public Mute(ObjectId objectId, COfflinePlayer target, String message, COfflinePlayer issuer, boolean revoked, Date dateIssued) {
+    public Mute(ObjectId objectId, UUID target, String message, UUID issuer, boolean revoked, Date dateIssued) {
         super(objectId, target, message, issuer, revoked, dateIssued);
     }
 }